@@ -11,26 +11,33 @@ public class AffineXYInverse extends AffineXYCommon
 
     protected Point2D.Double aRangePoint = null;
     @Override
-	public void setxk(double xk) { this.xk = xk; preferredSolution = -1; }
+	public void setxk(double xk) { this.xk = xk; changed(); }
     @Override
-	public void setxkx(double xkx) { this.xkx = xkx; preferredSolution = -1; }
+	public void setxkx(double xkx) { this.xkx = xkx; changed(); }
     @Override
-	public void setxky(double xky) { this.xky = xky; preferredSolution = -1; }
+	public void setxky(double xky) { this.xky = xky; changed(); }
     @Override
-	public void setxkxy(double xkxy) { this.xkxy = xkxy; preferredSolution = -1; }
+	public void setxkxy(double xkxy) { this.xkxy = xkxy; changed(); }
     @Override
-	public void setyk(double yk) { this.yk = yk; preferredSolution = -1; }
+	public void setyk(double yk) { this.yk = yk; changed(); }
     @Override
-	public void setykx(double ykx) { this.ykx = ykx; preferredSolution = -1; }
+	public void setykx(double ykx) { this.ykx = ykx; changed(); }
     @Override
-	public void setyky(double yky) { this.yky = yky; preferredSolution = -1; }
+	public void setyky(double yky) { this.yky = yky; changed(); }
     @Override
-	public void setykxy(double ykxy) { this.ykxy = ykxy; preferredSolution = -1; }
+	public void setykxy(double ykxy) { this.ykxy = ykxy; changed(); }
     @Override
 	public void set(double xk, double xkx, double xky, double xkxy,
                     double yk, double ykx, double yky, double ykxy) {
         super.set(xk, xkx, xky, xkxy, yk, ykx, yky, ykxy);
+        changed();
+    }
+
+    /** Discard everything that was computed from the old
+        coefficients. */
+    protected void changed() {
         preferredSolution = -1;
+        solver = null;
     }
 
     /** Preferred solution number: 0 or 1 depending on whether the
@@ -40,6 +47,10 @@ public class AffineXYInverse extends AffineXYCommon
      * since the coefficients were changed.. */
     protected int preferredSolution = -1;
 
+    /** Solver specialized for the current coefficients and preferred
+        solution, or null if it has not been computed yet. */
+    protected transient Solver solver = null;
+
     @Override
 	public AffineXY createInverse() {
         AffineXY inv = new AffineXY();
@@ -59,19 +70,265 @@ public class AffineXYInverse extends AffineXYCommon
         point should be included in the range. */
     public void includeInRange(double x, double y) {
         aRangePoint = new Point2D.Double(x,y);
-        preferredSolution = -1;
+        changed();
+    }
+
+    /** @return the solver for the current coefficients, computing it
+        if necessary. */
+    protected Solver getSolver() throws UnsolvableException {
+        Solver s = solver;
+        if (s == null) {
+            if (preferredSolution == -1) {
+                // Initialize preferredSolution value.
+                computePreferredSolution();
+            }
+            s = new Solver(this);
+            solver = s;
+        }
+        return s;
     }
 
     @Override
 	public Point2D.Double transform(double x, double y)
         throws UnsolvableException {
-        if (preferredSolution == -1) {
-            // Initialize preferredSolution value.
-            computePreferredSolution();
+        Point2D.Double res = new Point2D.Double();
+        getSolver().solve(x, y, res);
+        return res;
+    }
+
+    /** Transform many points at once */
+    @Override
+	public void transform(double[] srcPts, int srcOff,
+                          double[] dstPts, int dstOff, int numPts)
+        throws UnsolvableException {
+        Solver s = getSolver();
+        Point2D.Double p = new Point2D.Double();
+        int twice = numPts * 2;
+        for (int i = 0; i < twice; i += 2) {
+            s.solve(srcPts[srcOff + i], srcPts[srcOff + i + 1], p);
+            dstPts[dstOff + i] = p.x;
+            dstPts[dstOff + i + 1] = p.y;
+        }
+    }
+
+    /** Solver for the preferred solution of the equations
+
+        x = xk + xkx u + xky v + xkxy u v
+        y = yk + ykx u + yky v + ykxy u v
+
+        for (u,v) given (x,y). The steps of solveEquations() that do
+        not depend on (x,y) -- choosing which equation to eliminate
+        the uv term from, whether to swap u and v, and which branch
+        of the quadratic formula to use -- are performed once in the
+        constructor, so each solution costs a handful of multiplies
+        and one square root. */
+    static final class Solver {
+        /** If true, then the system could not be simplified, so just
+            call solveEquations(). */
+        final boolean general;
+        /** If true, then the first equation determines u directly. */
+        final boolean linear;
+        final boolean swapxy;
+        final int preferredSolution;
+        /** Positive if the preferred solution uses the plus sign in
+            the quadratic formula, negative otherwise. Unlike the
+            order of the solutions returned by solveEquations(), which
+            depends on the sign of the linear coefficient, this stays
+            the same for every (x,y). */
+        final double branch;
+        final AffineXYInverse xform;
+
+        // After elimination, the equations are
+        //
+        //   0 = c1 - u1 x - v1 y + kx1 u + ky1 v
+        //   0 = c2 - u2 x - v2 y + kx2 u + ky2 v + kxy2 u v
+        //
+        // (with u and v swapped if swapxy is true).
+        final double c2, u2, v2, kx2, ky2, kxy2;
+        /** For the linear case, u = u0 + ux x + uy y. */
+        final double u0, ux, uy;
+        /** Otherwise, v = m u + b, where b = b0 + bx x + by y, and u
+            is a root of a u^2 + (b2k + kxy2 b) u + (c2 - u2 x - v2 y
+            + ky2 b). */
+        final double m, b0, bx, by, a, b2k;
+
+        Solver(AffineXYInverse xf) {
+            xform = xf;
+            preferredSolution = xf.preferredSolution;
+            double c1 = xf.xk, u1 = 1, v1 = 0;
+            double kx1 = xf.xkx, ky1 = xf.xky, kxy1 = xf.xkxy;
+            double c2 = xf.yk, u2 = 0, v2 = 1;
+            double kx2 = xf.ykx, ky2 = xf.yky, kxy2 = xf.ykxy;
+
+            // Same steps as solveEquations(), but tracking the
+            // dependence of the constant terms on (x,y).
+            if (kxy1 != 0) {
+                if (Math.abs(kxy2) < Math.abs(kxy1)) {
+                    double tmp;
+                    tmp = c1; c1 = c2; c2 = tmp;
+                    tmp = u1; u1 = u2; u2 = tmp;
+                    tmp = v1; v1 = v2; v2 = tmp;
+                    tmp = kx1; kx1 = kx2; kx2 = tmp;
+                    tmp = ky1; ky1 = ky2; ky2 = tmp;
+                    tmp = kxy1; kxy1 = kxy2; kxy2 = tmp;
+                }
+                double rat = -kxy1 / kxy2;
+                c1 += rat * c2;
+                u1 += rat * u2;
+                v1 += rat * v2;
+                kx1 += rat * kx2;
+                ky1 += rat * ky2;
+            }
+
+            boolean general = false;
+            boolean linear = false;
+            boolean swapxy = false;
+            double u0 = 0, ux = 0, uy = 0;
+            double m = 0, b0 = 0, bx = 0, by = 0, a = 0, b2k = 0;
+
+            if (ky1 == 0) {
+                if (kx1 == 0) {
+                    // Degenerate; let solveEquations() sort it out.
+                    general = true;
+                } else {
+                    linear = true;
+                    u0 = -c1 / kx1;
+                    ux = u1 / kx1;
+                    uy = v1 / kx1;
+                }
+            } else {
+                if (Math.abs(kx1) > Math.abs(ky1)) {
+                    swapxy = true;
+                    double tmp;
+                    tmp = kx1; kx1 = ky1; ky1 = tmp;
+                    tmp = kx2; kx2 = ky2; ky2 = tmp;
+                }
+                b0 = -c1 / ky1;
+                bx = u1 / ky1;
+                by = v1 / ky1;
+                m = -kx1 / ky1;
+                a = kxy2 * m;
+                b2k = kx2 + m * ky2;
+            }
+
+            this.general = general;
+            this.linear = linear;
+            this.swapxy = swapxy;
+            this.c2 = c2;
+            this.u2 = u2;
+            this.v2 = v2;
+            this.kx2 = kx2;
+            this.ky2 = ky2;
+            this.kxy2 = kxy2;
+            this.u0 = u0;
+            this.ux = ux;
+            this.uy = uy;
+            this.m = m;
+            this.b0 = b0;
+            this.bx = bx;
+            this.by = by;
+            this.a = a;
+            this.b2k = b2k;
+            this.branch = (a == 0 || general || linear) ? 1
+                : chooseBranch(xf.aRangePoint);
+        }
+
+        /** @return the branch whose solution for the image of
+            rangePoint is nearest to rangePoint itself. */
+        private double chooseBranch(Point2D.Double rangePoint) {
+            if (rangePoint == null) {
+                return 1;
+            }
+            Point2D.Double domainPoint =
+                xform.createInverse().transform(rangePoint.x, rangePoint.y);
+            double minDist = 0;
+            double res = 1;
+            boolean haveMinDist = false;
+            Point2D.Double p = new Point2D.Double();
+            for (double br = 1; br >= -1; br -= 2) {
+                try {
+                    solve(domainPoint.x, domainPoint.y, br, p);
+                } catch (UnsolvableException x) {
+                    continue;
+                }
+                double dist = rangePoint.distance(p);
+                if (!haveMinDist || dist < minDist) {
+                    haveMinDist = true;
+                    minDist = dist;
+                    res = br;
+                }
+            }
+            return res;
+        }
+
+        /** Store the preferred solution for (x,y) in res. */
+        void solve(double x, double y, Point2D.Double res)
+            throws UnsolvableException {
+            solve(x, y, branch, res);
+        }
+
+        /** Store in res the solution for (x,y) that uses the plus
+            (if branch is positive) or minus (otherwise) sign in the
+            quadratic formula. */
+        void solve(double x, double y, double branch, Point2D.Double res)
+            throws UnsolvableException {
+            if (general) {
+                AffineXYInverse xf = xform;
+                Point2D.Double[] solutions = solveEquations
+                    (xf.xk - x, xf.xkx, xf.xky, xf.xkxy,
+                     xf.yk - y, xf.ykx, xf.yky, xf.ykxy);
+                if (solutions.length == 0) {
+                    throw new UnsolvableException("No solution");
+                }
+                res.setLocation(solutions[Math.min(preferredSolution,
+                                                   solutions.length - 1)]);
+                return;
+            }
+
+            double k2 = c2 - u2 * x - v2 * y;
+
+            if (linear) {
+                double u = u0 + ux * x + uy * y;
+                res.x = u;
+                res.y = -(k2 + kx2 * u) / (ky2 + u * kxy2);
+                return;
+            }
+
+            double b = b0 + bx * x + by * y;
+            double b2 = b2k + kxy2 * b;
+            double c = k2 + b * ky2;
+            double u;
+
+            if (a == 0) {
+                if (b2 == 0) {
+                    if (c != 0) {
+                        throw new UnsolvableException("No solution");
+                    }
+                    throw new InfiniteSolutionsException();
+                }
+                u = -c / b2;
+            } else {
+                double discriminant = b2 * b2 - 4 * a * c;
+                if (discriminant < 0) {
+                    throw new UnsolvableException("No solution");
+                }
+                double dsqrt = (branch > 0) ? Math.sqrt(discriminant)
+                    : -Math.sqrt(discriminant);
+                // Use whichever of the two equivalent formulas for
+                // this root avoids cancellation.
+                u = ((b2 < 0) == (dsqrt >= 0)) ? (-b2 + dsqrt) / (2 * a)
+                    : 2 * c / (-b2 - dsqrt);
+            }
+
+            double v = m * u + b;
+            if (swapxy) {
+                res.x = v;
+                res.y = u;
+            } else {
+                res.x = u;
+                res.y = v;
+            }
         }
-        Point2D.Double[] solutions =
-            solveEquations(xk - x, xkx, xky, xkxy, yk - y, ykx, yky, ykxy);
-        return solutions[preferredSolution];
     }
 
     private static Point2D.Double[] transpose(Point2D.Double[] points,
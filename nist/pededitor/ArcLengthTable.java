@@ -0,0 +1,264 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/** Table of cumulative arc length for a curve, for answering
+    repeated length(t0, t1) and inverse length queries in O(log n)
+    time instead of integrating from scratch each time.
+
+    The curve's domain is divided into intervals that are small
+    enough that 5-point Gauss-Legendre quadrature of the curve's speed
+    over each interval is accurate to within the requested error, and
+    the cumulative length at each interval boundary is stored. The
+    length up to any t is then the cumulative length at the start of
+    t's interval plus one more quadrature over the part of that
+    interval before t. */
+public class ArcLengthTable {
+    /** Maximum number of times an interval may be bisected. */
+    static final int MAX_DEPTH = 30;
+
+    /** 5-point Gauss-Legendre nodes and weights on [-1, 1]. */
+    static final double[] GL_NODES = {
+        -0.9061798459386640, -0.5384693101056831, 0,
+        0.5384693101056831, 0.9061798459386640 };
+    static final double[] GL_WEIGHTS = {
+        0.2369268850561891, 0.4786286704993665, 0.5688888888888889,
+        0.4786286704993665, 0.2369268850561891 };
+
+    BoundedParam2D c;
+    /** Interval boundaries, in increasing order. */
+    double[] ts;
+    /** lengths[i] is the length of the curve over [ts[0], ts[i]]. */
+    double[] lengths;
+
+    /** Build a table for c whose length values are accurate to within
+        roughly max(absoluteError, relativeError * c's length). */
+    public ArcLengthTable(BoundedParam2D c, double absoluteError,
+            double relativeError) {
+        this.c = c;
+        double minT = c.getMinT();
+        double maxT = c.getMaxT();
+
+        // Start with breaks at every integer t value, since those are
+        // the places where the curve might not be smooth.
+        ArrayList<Double> seeds = new ArrayList<>();
+        seeds.add(minT);
+        for (double t = Math.floor(minT) + 1; t < maxT; ++t) {
+            seeds.add(t);
+        }
+        seeds.add(maxT);
+
+        double rough = 0;
+        for (int i = 1; i < seeds.size(); ++i) {
+            rough += gaussLegendre(seeds.get(i - 1), seeds.get(i));
+        }
+        double tolerance = Math.max(absoluteError, relativeError * rough);
+        double width = maxT - minT;
+
+        ArrayList<Double> tList = new ArrayList<>();
+        ArrayList<Double> lList = new ArrayList<>();
+        tList.add(minT);
+        lList.add(0.0);
+        for (int i = 1; i < seeds.size(); ++i) {
+            double t0 = seeds.get(i - 1);
+            double t1 = seeds.get(i);
+            add(t0, t1, gaussLegendre(t0, t1),
+                    (width == 0) ? tolerance : tolerance * (t1 - t0) / width,
+                    0, tList, lList);
+        }
+
+        ts = new double[tList.size()];
+        lengths = new double[ts.length];
+        for (int i = 0; i < ts.length; ++i) {
+            ts[i] = tList.get(i);
+            lengths[i] = lList.get(i);
+        }
+    }
+
+    /** Append the breaks and cumulative lengths for [t0, t1], given
+        est, an estimate of the length of that interval. */
+    void add(double t0, double t1, double est, double tolerance, int depth,
+            ArrayList<Double> tList, ArrayList<Double> lList) {
+        double mid = (t0 + t1) / 2;
+        double left = gaussLegendre(t0, mid);
+        double right = gaussLegendre(mid, t1);
+        if (Math.abs(left + right - est) > tolerance && depth < MAX_DEPTH) {
+            add(t0, mid, left, tolerance / 2, depth + 1, tList, lList);
+            add(mid, t1, right, tolerance / 2, depth + 1, tList, lList);
+            return;
+        }
+        tList.add(t1);
+        lList.add(lList.get(lList.size() - 1) + left + right);
+    }
+
+    double speed(double t) {
+        return c.getSpeed(t);
+    }
+
+    /** @return the 5-point Gauss-Legendre estimate of the length of
+        the curve over [t0, t1]. The speeds at all five nodes are
+        evaluated in one batch. */
+    double gaussLegendre(double t0, double t1) {
+        double half = (t1 - t0) / 2;
+        double mid = (t0 + t1) / 2;
+        int cnt = GL_NODES.length;
+        double[] ts = new double[cnt];
+        for (int i = 0; i < cnt; ++i) {
+            ts[i] = mid + half * GL_NODES[i];
+        }
+        double[] speeds = new double[cnt];
+        Param2Ds.speeds(c, ts, speeds, new double[cnt], new double[cnt]);
+        double sum = 0;
+        for (int i = 0; i < cnt; ++i) {
+            sum += GL_WEIGHTS[i] * speeds[i];
+        }
+        return sum * half;
+    }
+
+    /** @return the index i of the interval [ts[i], ts[i+1]] that
+        contains t. */
+    int intervalIndex(double t) {
+        int i = Arrays.binarySearch(ts, t);
+        if (i < 0) {
+            i = -i - 2;
+        }
+        return Math.max(0, Math.min(ts.length - 2, i));
+    }
+
+    /** @return the length of the curve over [getMinT(), t]. */
+    public double lengthTo(double t) {
+        if (ts.length < 2) {
+            return 0;
+        }
+        t = BoundedParam2Ds.constrainToDomain(c, t);
+        int i = intervalIndex(t);
+        return (t == ts[i]) ? lengths[i]
+            : lengths[i] + gaussLegendre(ts[i], t);
+    }
+
+    /** @return the length of the curve over [t0, t1]. */
+    public double length(double t0, double t1) {
+        return lengthTo(t1) - lengthTo(t0);
+    }
+
+    /** @return the total length of the curve. */
+    public double length() {
+        return lengths[lengths.length - 1];
+    }
+
+    /** @return the t value at which the length of the curve over
+        [getMinT(), t] equals s. */
+    public double t(double s) {
+        if (s <= 0 || ts.length < 2) {
+            return ts[0];
+        }
+        if (s >= length()) {
+            return ts[ts.length - 1];
+        }
+        int i = Arrays.binarySearch(lengths, s);
+        if (i >= 0) {
+            return ts[i];
+        }
+        i = -i - 2;
+
+        // Newton's method, falling back on bisection whenever Newton
+        // strays outside the bracket [lo, hi].
+        double lo = ts[i];
+        double hi = ts[i + 1];
+        double target = s - lengths[i];
+        double t = lo + (hi - lo) * target / (lengths[i + 1] - lengths[i]);
+        double maxError = 1e-14 * length();
+        for (int step = 0; step < 60 && hi > lo; ++step) {
+            double err = gaussLegendre(ts[i], t) - target;
+            if (Math.abs(err) <= maxError) {
+                break;
+            }
+            if (err > 0) {
+                hi = t;
+            } else {
+                lo = t;
+            }
+            double sp = speed(t);
+            double next = (sp > 0) ? t - err / sp : Double.NaN;
+            t = (next >= lo && next <= hi) ? next : (lo + hi) / 2;
+        }
+        return t;
+    }
+
+    /** @return the number of intervals in the table. */
+    public int size() {
+        return ts.length - 1;
+    }
+
+    static void help() {
+        System.err.println
+            ("Usage:\n\n"
+             + "    java gov.nist.pededitor.ArcLengthTable <PED file>...\n\n"
+             + "Compare ArcLengthTable lengths against adaptive Romberg\n"
+             + "integration for random sections of every curve.");
+        System.exit(1);
+    }
+
+    /** Accuracy and speed check against BoundedParam2D.length(), which
+        uses adaptive Romberg integration. */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            help();
+        }
+        Random r = new Random(1);
+        for (String filename: args) {
+            Diagram d;
+            try {
+                d = Diagram.loadFrom(new File(filename));
+            } catch (IOException x) {
+                System.err.println(filename + ": " + x);
+                continue;
+            }
+            double maxRelError = 0;
+            double maxInverseError = 0;
+            long rombergNanos = 0;
+            long tableNanos = 0;
+            int queryCnt = 0;
+            for (BoundedParam2D b: d.pageCurves().params) {
+                long start = System.nanoTime();
+                ArcLengthTable table = new ArcLengthTable(b, 0, 1e-9);
+                tableNanos += System.nanoTime() - start;
+                double tot = table.length();
+                for (int i = 0; i < 20; ++i) {
+                    double t0 = b.getMinT() + r.nextDouble() * (b.getMaxT() - b.getMinT());
+                    double t1 = b.getMinT() + r.nextDouble() * (b.getMaxT() - b.getMinT());
+                    if (t0 > t1) {
+                        double tmp = t0; t0 = t1; t1 = tmp;
+                    }
+                    start = System.nanoTime();
+                    double expected = b.length(0, 1e-10, 100000, t0, t1).value;
+                    long mid = System.nanoTime();
+                    double actual = table.length(t0, t1);
+                    tableNanos += System.nanoTime() - mid;
+                    rombergNanos += mid - start;
+                    ++queryCnt;
+                    if (tot > 0) {
+                        maxRelError = Math.max(maxRelError,
+                                Math.abs(expected - actual) / tot);
+                        double s = table.lengthTo(t1);
+                        maxInverseError = Math.max(maxInverseError,
+                                Math.abs(table.lengthTo(table.t(s)) - s) / tot);
+                    }
+                }
+            }
+            System.out.println(String.format(
+                            "%-28s %5d queries, Romberg %8.1f ms, table %7.1f ms,"
+                            + " max error %.2g, max inverse error %.2g",
+                            new File(filename).getName(), queryCnt,
+                            rombergNanos / 1e6, tableNanos / 1e6, maxRelError,
+                            maxInverseError));
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.awt.EventQueue;
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.util.Objects;
+
+/** Compute BasicEditor auto-positions on a background thread, so
+    that painting the auto-position while the mouse moves never waits
+    for a slow key point or nearest curve search.
+
+    Requests are coalesced: if several requests arrive while a
+    computation is in progress, only the latest one is processed
+    afterwards. The result of the last completed request is cached,
+    and the editor is redrawn when a new result is ready.
+
+    The event dispatch thread changes the editor's diagram freely,
+    sometimes temporarily and without calling propagateChange(), so
+    the computation never reads it. Instead, each request carries an
+    undo stack entry for the diagram, which is immutable, and the
+    computation uses a private copy of the diagram loaded from that
+    entry. */
+class AutoPositionWorker {
+    /** The inputs that the auto-position depends on. Two requests
+        with equal mprin, version, and context have the same
+        auto-position. */
+    static class Request {
+        final Point2D.Double mprin;
+        final long version;
+        /** The diagram at version. */
+        final EditorState.StoredState state;
+        final Diagram.AutoPositionContext context;
+
+        Request(Point2D.Double mprin, long version,
+                EditorState.StoredState state,
+                Diagram.AutoPositionContext context) {
+            this.mprin = mprin;
+            this.version = version;
+            this.state = state;
+            this.context = context;
+        }
+
+        boolean matches(Request other) {
+            return other != null
+                && Objects.equals(mprin, other.mprin)
+                && version == other.version
+                && context.equals(other.context);
+        }
+    }
+
+    static class Result {
+        Request request;
+        Point2D.Double location;
+        Diagram.AutoPositionType position;
+    }
+
+    BasicEditor editor;
+    Thread thread = null;
+    Request pending = null;
+    Result result = null;
+    /** The diagram that the last request was computed on, and the
+        state it was loaded from. Only the worker thread uses these. */
+    private EditorState.StoredState diagramState = null;
+    private Diagram diagram = null;
+
+    AutoPositionWorker(BasicEditor editor) {
+        this.editor = editor;
+    }
+
+    /** @return the auto-position for request if it has already been
+        computed. Otherwise, schedule its computation, replacing any
+        other request that has not been started yet, and return
+        null. */
+    synchronized Result get(Request request) {
+        if (result != null && request.matches(result.request)) {
+            return result;
+        }
+        if (!request.matches(pending)) {
+            pending = request;
+            if (thread == null) {
+                thread = new Thread(() -> { run(); }, "AutoPositionWorker");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            notifyAll();
+        }
+        return null;
+    }
+
+    /** Stop the background thread. */
+    synchronized void stop() {
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+        pending = null;
+    }
+
+    /** @return the auto-position for request. */
+    Result compute(Request request) {
+        Result res = new Result();
+        res.request = request;
+        try {
+            if (diagramState != request.state) {
+                diagram = null;
+                diagram = EditorState.loadFrom(request.state).diagram;
+                diagramState = request.state;
+            }
+        } catch (IOException x) {
+            // Leave the mouse where it is.
+            x.printStackTrace();
+            res.location = request.mprin;
+            res.position = Diagram.AutoPositionType.NONE;
+            return res;
+        }
+        Diagram.AutoPositionHolder ap = new Diagram.AutoPositionHolder();
+        DecorationHandle h = diagram.autoPositionHandle(
+                ap, false, request.mprin, request.context);
+        res.location = diagram.principalLocation(h);
+        res.position = ap.position;
+        return res;
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                Request request;
+                synchronized (this) {
+                    while (pending == null) {
+                        if (thread != Thread.currentThread()) {
+                            return;
+                        }
+                        wait();
+                    }
+                    request = pending;
+                    pending = null;
+                }
+
+                Result res = compute(request);
+                synchronized (this) {
+                    result = res;
+                }
+                EventQueue.invokeLater(() -> { editor.redraw(); });
+            }
+        } catch (InterruptedException x) {
+        }
+    }
+}
@@ -35,6 +35,17 @@ abstract public class Axis implements Comparable<Axis>, ToDoubleFunction<Point2D
         location in principal coordinates. */
     abstract public double applyAsDouble(double px, double py);
 
+    /** Bulk version of applyAsDouble(double, double): for i in [0,
+        cnt), set values[valuesOff + i] to the value of this variable
+        at (xys[xysOff + 2i], xys[xysOff + 2i + 1]). */
+    public void applyAsDouble(double[] xys, int xysOff,
+            double[] values, int valuesOff, int cnt) {
+        for (int i = 0; i < cnt; ++i) {
+            values[valuesOff + i] = applyAsDouble
+                (xys[xysOff + 2 * i], xys[xysOff + 2 * i + 1]);
+        }
+    }
+
     /** Convenience variation of value(double, double). */
     @Override public double applyAsDouble(Point2D p) {
         return applyAsDouble(p.getX(), p.getY());
@@ -14,6 +14,7 @@ import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Component;
 import java.awt.Dimension;
+import java.awt.EventQueue;
 import java.awt.Frame;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
@@ -83,6 +84,7 @@ import javax.swing.WindowConstants;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 
 import Jama.Matrix;
 
@@ -216,29 +218,97 @@ public class BasicEditor extends Diagram
             (file.getParent().toString(), '#' + file.getFileName().toString());
     }
 
+    /** Timer task that requests an autosave. */
     class FileSaver extends TimerTask {
         @Override public void run() {
-            int hash = diagramHashCode();
-            if (hash != lastSaveHashCode && hash != autoSaveHashCode) {
-                Path file = getAutosave();
+            EventQueue.invokeLater(() -> { autosave(); });
+        }
+    }
+
+    /** Write the diagram to the autosave file if it has changed since
+        the last save or autosave. This must be called from the event
+        dispatch thread, where the diagram is modified. A snapshot is
+        taken here, and it is serialized and written on a background
+        thread. At most one autosave runs at a time; if autosave() is
+        called while one is running, it runs again once that one
+        finishes. The snapshot is the only serialization done here;
+        mayNeedSave() decides whether to save without one. */
+    void autosave() {
+        if (autosaving) {
+            autosaveRequested = true;
+            return;
+        }
+        long v = version;
+        if (v == autoSaveVersion || !mayNeedSave()) {
+            return;
+        }
+        Path file = getAutosave();
+        if (file == null) {
+            return;
+        }
+        TokenBuffer snapshot;
+        try {
+            snapshot = jsonSnapshot();
+        } catch (IOException x) {
+            System.err.println("Could not save '" + file + "': " + x);
+            return;
+        }
+
+        Timer saver = fileSaver;
+        autosaving = true;
+        Thread thread = new Thread(() -> {
+                IOException error = null;
                 try {
-                    saveAsPED(file, false);
-                    System.out.println("Saved '" + file + "'");
-                    autosaveFile = file;
-                    autoSaveHashCode = hash;
+                    writeSnapshot(snapshot, file);
                 } catch (IOException x) {
-                    System.err.println("Could not save '" + file + "': " + x);
+                    error = x;
                 }
+                IOException err = error;
+                EventQueue.invokeLater
+                    (() -> { autosaveFinished(saver, file, v, err); });
+            }, "Autosave");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void autosaveFinished(Timer saver, Path file, long v,
+            IOException error) {
+        autosaving = false;
+        if (error != null) {
+            System.err.println("Could not save '" + file + "': " + error);
+        } else if (saver != fileSaver) {
+            // The diagram was closed in the meantime. Leave the file
+            // alone, as closing does with other autosave files.
+        } else if (lastSaveVersion >= v) {
+            // The diagram was saved in the meantime, so the autosave
+            // file is obsolete.
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException x) {
+                System.err.println("Could not delete '" + file + "': " + x);
             }
+            if (file.equals(autosaveFile)) {
+                autosaveFile = null;
+            }
+        } else {
+            System.out.println("Saved '" + file + "'");
+            autosaveFile = file;
+            autoSaveVersion = v;
+        }
+        if (autosaveRequested) {
+            autosaveRequested = false;
+            autosave();
         }
     }
 
-    void markAsSaved(int hash) {
+    void markAsSaved(int hash, long version) {
         lastSaveHashCode = hash;
+        lastSaveVersion = version;
     }
 
     void markAsSaved() {
-        markAsSaved(diagramHashCode());
+        long v = version;
+        markAsSaved(diagramHashCode(), v);
     }
 
     class CloseListener extends WindowAdapter
@@ -412,7 +482,17 @@ public class BasicEditor extends Diagram
     protected transient boolean smoothed = false;
     protected transient boolean showGrid = false;
     protected transient int lastSaveHashCode = 0;
-    protected transient int autoSaveHashCode = 0;
+    /** The version at which the diagram was known to have hash code
+        lastSaveHashCode, or -1 if unknown. The hash code, which
+        requires serializing the diagram, only needs to be recomputed
+        if the version changes. */
+    protected transient long lastSaveVersion = -1;
+    /** The version that was last written to the autosave file. */
+    protected transient long autoSaveVersion = -1;
+    /** True while an autosave is being written in the background. */
+    private transient boolean autosaving = false;
+    /** True if autosave() was called while autosaving was true. */
+    private transient boolean autosaveRequested = false;
     protected transient Dimension oldFrameSize = null;
     protected transient boolean autoRescale = false;
     protected transient boolean allowRobotToMoveMouse = true;
@@ -430,7 +510,7 @@ public class BasicEditor extends Diagram
     protected transient DecorationHandle selection;
     transient Timer fileSaver = null;
 
-    protected transient ArrayList<EditorState.StringAndTransientState>
+    protected transient ArrayList<EditorState.StoredState>
         undoStack = new ArrayList<>();
     // If undoStackOffset < undoStack.size() then the extras are operations that
     // one can Redo.
@@ -440,6 +520,13 @@ public class BasicEditor extends Diagram
     protected transient boolean preserveMprin = false;
     protected transient boolean isShiftDown = false;
     protected transient Point2D.Double statusPt = null;
+    /** If true, then the auto-position that is shown while Shift is
+        held down is computed in the background. */
+    protected transient boolean asyncAutoPosition = true;
+    transient AutoPositionWorker autoPositionWorker = new AutoPositionWorker(this);
+    /** The state that autoPositionState() returns when the undo stack
+        does not match the current diagram. */
+    private transient EditorState.StoredState autoPositionState = null;
 
     /** autosaveFile is null unless an autosave event happened and the
         resulting autosavefile has not been deleted by this program. */
@@ -630,7 +717,8 @@ public class BasicEditor extends Diagram
         paintSuppressionRequestCnt = 0;
         tieLineDialog.setVisible(false);
         tieLineCorners = new ArrayList<>();
-        lastSaveHashCode = autoSaveHashCode = 0;
+        lastSaveHashCode = 0;
+        lastSaveVersion = autoSaveVersion = -1;
 
         if (Stuff.isFileAssociationBroken()) {
             // Enable directory monitoring.
@@ -698,6 +786,7 @@ public class BasicEditor extends Diagram
     */
     public void close() {
         if (!isClosed()) {
+            autoPositionWorker.stop();
             if (cropFrame != null) {
                 cropFrame.dispose();
                 cropFrame = null;
@@ -1636,7 +1725,7 @@ public class BasicEditor extends Diagram
         if (isDragging()) {
             return null;
         } else if (isShiftDown) {
-            return statusPt = getAutoPosition(ap);
+            return statusPt = getAutoPositionLater(ap);
         } else if (unstick && mouseIsStuckAtSelection()) {
             // Show the point that would be added if the mouse became
             // unstuck.
@@ -2043,8 +2132,9 @@ public class BasicEditor extends Diagram
             double area = b.area(t0, t1) * areaMul;
             double totArea = b.area() * areaMul;
             double lengthMul  = lengthMultiplier();
-            double length = b.length(0, 1e-6, 800, t0, t1).value / lengthMul;
-            double totLength = b.length(0, 1e-6, 800).value / lengthMul;
+            ArcLengthTable lengths = arcLengthTable(dec);
+            double length = lengths.length(t0, t1) / lengthMul;
+            double totLength = lengths.length() / lengthMul;
 
             if (hasArea(dec)) {
                 mathWindow.setTotLengthLabel("Perimeter");
@@ -4172,15 +4262,6 @@ public class BasicEditor extends Diagram
         redraw();
     }
 
-    Interp2DHandle2 toHandle(DecorationDistance dist) {
-        double t = dist.distance.t;
-        return new Interp2DHandle2(
-                (Interp2DDecoration) dist.decoration,
-                dist.pageCurve.info(t),
-                standardPageToPrincipal.transform(
-                        dist.pageCurve.getLocation(t)));
-}
-
     /** Toggle the closed/open status of the currently selected
         curve. */
     public void toggleCurveClosure() {
@@ -4255,6 +4336,12 @@ public class BasicEditor extends Diagram
             System.exit(2);
         }
 
+        // Move most of the delay of the first load and save to the
+        // time it takes the user to pick a file.
+        Thread prepare = new Thread(Diagram::prepareMappers, "Prepare mappers");
+        prepare.setDaemon(true);
+        prepare.start();
+
         BasicEditorArgsRunnable bear = new BasicEditorArgsRunnable(ec, args);
         if (waitDialog == null) {
             waitDialog = new WaitDialog(bear, "Loading " + programTitle + "...");
@@ -4314,7 +4401,9 @@ public class BasicEditor extends Diagram
                 return;
             }
             clearFileList();
-            lastSaveHashCode = autoSaveHashCode = diagramHashCode();
+            long v = version;
+            lastSaveHashCode = diagramHashCode();
+            lastSaveVersion = autoSaveVersion = v;
         }
 
         try (UpdateSuppressor us = new UpdateSuppressor()) {
@@ -4941,11 +5030,44 @@ public class BasicEditor extends Diagram
     }
 
     @JsonIgnore public boolean isSaveNeeded() {
+        if (!mayNeedSave()) {
+            return false;
+        }
+        if (diagramHashCode() != lastSaveHashCode) {
+            return true;
+        }
+        // A change was undone, or nothing really changed.
+        lastSaveVersion = version;
+        return false;
+    }
+
+    /** Like isSaveNeeded(), but without serializing the diagram, so
+        this may return true when isSaveNeeded() would not. */
+    boolean mayNeedSave() {
         if (!isEditable() || principalToStandardPage == null) {
             return false;
         }
-        int stateHash = diagramHashCode();
-        return stateHash != lastSaveHashCode;
+        long v = version;
+        if (v == lastSaveVersion) {
+            return false;
+        }
+        EditorState.StoredState top = currentUndoState();
+        if (top != null && top.diagramHashCode() == lastSaveHashCode) {
+            // A change was undone.
+            lastSaveVersion = v;
+            return false;
+        }
+        return true;
+    }
+
+    /** @return the undo stack entry that is known to match the
+        current diagram, or null if there is none. */
+    private EditorState.StoredState currentUndoState() {
+        if (undoStackOffset == 0) {
+            return null;
+        }
+        EditorState.StoredState top = undoStack.get(undoStackOffset - 1);
+        return (top.version == version) ? top : null;
     }
 
     /** Give the user an opportunity to save the old diagram or to
@@ -5125,7 +5247,13 @@ public class BasicEditor extends Diagram
     }
 
     @Override public void openDiagram(File file) throws IOException {
-        super.openDiagram(file);
+        Diagram d = loadFrom(file);
+        if (isEditable()) {
+            // Read deferred images now, while the file is known to be
+            // unchanged, instead of failing at the next save.
+            d.readDeferredImages();
+        }
+        copyFrom(d);
         markAsSaved();
         startFileSaver();
         initializeGUI();
@@ -5746,8 +5874,14 @@ public class BasicEditor extends Diagram
         if (!isEditable()) {
             return 0;
         }
+        // Reuse the undo stack entry for the current state instead of
+        // serializing the diagram again.
+        EditorState.StoredState top = currentUndoState();
+        if (top != null) {
+            return top.diagramHashCode();
+        }
         try {
-            int res = EditorState.toStringAndTransientState(this).str.hashCode();
+            int res = EditorState.toStoredState(this).diagramHashCode();
             return res;
         } catch (IOException e) {
             // TODO Auto-generated catch block
@@ -5790,14 +5924,11 @@ public class BasicEditor extends Diagram
         }
     }
 
-    /** @param segment A line on the standard page
-
-        Return a grid line (also on the standard page) that passes
-        through segment.getP1() and that is roughly parallel to
-        segment, or null if no such line is close enough to parallel.
-        A grid line is a line of zero change for a defined axis (from
-        the "axes" variable). */
-    Line2D.Double nearestGridLine(Line2D.Double segment) {
+    /** @return the directions, in principal coordinates, of the grid
+        lines for nearestGridLine(). A grid line is a line of zero
+        change for a defined axis (from the "axes" variable), or a
+        line at the angle given in the math window. */
+    ArrayList<Point2D.Double> gridVectors() {
         ArrayList<Point2D.Double> vectors = new ArrayList<>();
         for (LinearAxis axis: axes) {
             // Add the line of no change for this axis. The line
@@ -5814,7 +5945,7 @@ public class BasicEditor extends Diagram
             vectors.add(p);
         }
 
-        return nearestGridLine(segment, vectors);
+        return vectors;
     }
 
     public DecorationHandle secondarySelection() {
@@ -5838,11 +5969,6 @@ public class BasicEditor extends Diagram
         return null;
     }
 
-    static enum AutoPositionType { NONE, CURVE, POINT };
-    static class AutoPositionHolder {
-        AutoPositionType position = AutoPositionType.NONE;
-    }
-
     /** Return the point in principal coordinates that
         auto-positioning would move the mouse to. */
     @JsonIgnore public Point2D.Double getAutoPosition() {
@@ -5854,6 +5980,47 @@ public class BasicEditor extends Diagram
         return (h == null) ? null : principalLocation(h);
     }
 
+    /** Like getAutoPosition(ap), but if asyncAutoPosition is true and
+        the result is not ready yet, then start computing it in the
+        background and return the unadjusted mouse position for now.
+        The editor is redrawn once the result is ready. */
+    Point2D.Double getAutoPositionLater(AutoPositionHolder ap) {
+        Point2D.Double mprin2 = getMousePrincipal();
+        if (!asyncAutoPosition || mprin2 == null) {
+            return getAutoPosition(ap);
+        }
+        EditorState.StoredState state = autoPositionState();
+        if (state == null) {
+            return getAutoPosition(ap);
+        }
+        AutoPositionWorker.Result res = autoPositionWorker.get(
+                new AutoPositionWorker.Request(mprin2, version, state,
+                        autoPositionContext()));
+        if (ap != null) {
+            ap.position = (res == null) ? AutoPositionType.NONE : res.position;
+        }
+        return (res == null) ? mprin2 : res.location;
+    }
+
+    /** @return an undo stack entry that matches the current diagram
+        for AutoPositionWorker, or null if none can be created. */
+    private EditorState.StoredState autoPositionState() {
+        EditorState.StoredState res = currentUndoState();
+        if (res != null) {
+            return res;
+        }
+        if (autoPositionState == null || autoPositionState.version != version) {
+            try {
+                autoPositionState = EditorState.toStoredState(this);
+                autoPositionState.version = version;
+            } catch (IOException x) {
+                x.printStackTrace();
+                autoPositionState = null;
+            }
+        }
+        return autoPositionState;
+    }
+
     /** Return a DecorationHandle for the point in principal
         coordinates that auto-positioning would move the mouse to -- a
         nearby key point if possible, or a point on a nearby curve
@@ -5882,172 +6049,35 @@ public class BasicEditor extends Diagram
 
     DecorationHandle getAutoPositionHandle(AutoPositionHolder ap,
             boolean keypointsOnly, Point2D mprin2) {
-        double maxMovePixels = 50; // Maximum number of pixels to
-        if (ap == null) {
-            ap = new AutoPositionHolder();
-        }
-        ap.position = AutoPositionType.NONE;
-
         if (mprin2 == null) {
-            return (mprin == null) ? null : new NullDecorationHandle(mprin);
-        }
-        Point2D.Double mousePage = principalToStandardPage.transform(mprin2);
-
-        DecorationHandle res = null;
-        Point2D.Double newPage = null;
-        double pageDist = 1e100;
-
-        int oldSize = decorations.size();
-
-        try (UpdateSuppressor us = new UpdateSuppressor()) {
-                ArrayList<Point2D> selections = new ArrayList<>();
-
-                Point2D.Double selPoint = null;
-                if (selection != null) {
-                    // For autopositioning purposes, ignore the
-                    // precise spot we picked and focus on the
-                    // highlighted vertex.
-                    DecorationHandle d = (selection instanceof Interp2DHandle2)
-                        ? ((Interp2DHandle2) selection).indexHandle()
-                        : selection;
-                    selPoint = principalLocation(d);
-                    if (selPoint != null) {
-                        selections.add(selPoint);
-                    }
-                }
-                Point2D.Double point2 = principalLocation(secondarySelection());
-                if (point2 != null) {
-                    selections.add(point2);
-                    double dx = selPoint.x - point2.x;
-                    double dy = selPoint.y - point2.y;
-
-                    if (!(selection.getDecoration() instanceof ArcDecoration)) {
-                        Point2D[] diameter = {
-                            point2,
-                            new Point2D.Double(selPoint.x + dx, selPoint.y + dy) };
-                        addDecoration(new ArcDecoration(
-                                        new ArcInterp2D(Arrays.asList(diameter))));
-                    }
-
-                    double distPixels = point2.distance(selPoint) * scale;
-                    if (distPixels > maxMovePixels * 2) {
-                        // Add the line through the midpoint of (selPoint, point2).
-                        Point2D.Double midpoint = Geom.midpoint(selPoint, point2);
-                        Point2D[] midpointLine = { midpoint,
-                                                   new Point2D.Double(midpoint.x - dy, midpoint.y + dx) };
-                        principalToStandardPage.transform(midpointLine, 0, midpointLine, 0,
-                                midpointLine.length);
-                        Line2D.Double pageSeg = pageSegmentToLine(new Line2D.Double(
-                                        midpointLine[0], midpointLine[1]));
-                        midpointLine[0] = pageSeg.getP1();
-                        midpointLine[1] = pageSeg.getP2();
-                        standardPageToPrincipal.transform(midpointLine, 0, midpointLine, 0,
-                                midpointLine.length);
-                        addDecoration(new CuspDecoration(
-                                        new CuspInterp2D(Arrays.asList(midpointLine), false, false)));
-                    }
-                }
-
-                for (Point2D p: selections) {
-                    principalToStandardPage.transform(p, p);
-                    Line2D.Double gridLine = nearestGridLine(
-                            new Line2D.Double(p, mousePage));
-                    if (gridLine == null) {
-                        continue;
-                    }
-                    gridLine = Geom.transform(standardPageToPrincipal, gridLine);
-                    addDecoration(new CuspDecoration(new CuspInterp2D(gridLine),
-                                         StandardStroke.INVISIBLE, 0));
-                }
-
-                ArrayList<DecorationHandle> hands = keyPointHandles(
-                        DecorationHandle.Type.SELECTION);
-                res = nearest(hands, mousePage);
-                if (res != null) {
-                    newPage = pageLocation(res);
-                    pageDist = mousePage.distance(newPage);
-                }
-
-                final double OVERLAP_DISTANCE = 1e-10;
-                int parameterizableCnt = 0;
-                for (DecorationHandle h: hands) {
-                    Point2D.Double pagePt = pageLocation(h);
-                    if (pagePt.distance(newPage) > OVERLAP_DISTANCE) {
-                        continue;
-                    }
-
-                    // Two or more handles are in the same place,
-                    // so do nitpicky stuff to get the
-                    // parameterization right. If there's only one
-                    // parameterizable handle, use it. If there
-                    // are two or more, use neither of them,
-                    // because it's ambiguous.
-
-                    if (h instanceof BoundedParameterizable2D) {
-                        ++parameterizableCnt;
-                        if (parameterizableCnt > 1) {
-                            // If there are two or more, use
-                            // neither, because it's ambiguous.
-                            res = new NullDecorationHandle(principalLocation(h));
-                            break;
-                        } else {
-                            // If there's only one parameterizable
-                            // handle, use it.
-                            res = h;
-                        }
-                    }
-                }
-
-                if (!keypointsOnly) {
-                    if (res != null) {
-                        // Subtract keyPointPixelDist (converted to page
-                        // coordinates) from keyPointDist before comparing
-                        // with curves, in order to express the preference for
-                        // key points over curves when the mouse is close to
-                        // both.
-                        double keyPointPixelDist = 10;
-                        pageDist -= keyPointPixelDist / scale;
-                        ap.position = AutoPositionType.POINT;
-                    }
-
-                    // Only jump to the nearest curve if it is at
-                    // least three times closer than pageDist.
-
-                    DecorationDistance nc;
-                    if (pageDist > 0
-                            && (nc = nearestCurve(mousePage)) != null
-                            && pageDist > 3 * nc.distance.distance) {
-                        ap.position = AutoPositionType.CURVE;
-                        res = toHandle(nc);
-                        newPage = nc.distance.point;
-                        pageDist = nc.distance.distance;
-                    }
-
-                    // move the mouse
-                    if (newPage == null
-                            || pageDist * scale > maxMovePixels) {
-                        ap.position = AutoPositionType.NONE;
-                        newPage = mousePage; // Leave the mouse where it is.
-                        res = new NullDecorationHandle(mprin2);
-                    }
-                }
-        } catch (Exception e) {
-            System.err.println(e);
-            System.exit(1);
-        } finally {
-            while (decorations.size() > oldSize) {
-                removeDecoration(decorations.get(decorations.size()-1));
-            }
-        }
-
-        if (res != null) {
-            int layer = getLayer(res.getDecoration());
-            if (layer == -1) {
-                // Don't return handles to temporary decorations!
-                return new NullDecorationHandle(principalLocation(res));
+            if (ap != null) {
+                ap.position = AutoPositionType.NONE;
             }
+            return (mprin == null) ? null : new NullDecorationHandle(mprin);
         }
+        return autoPositionHandle(ap, keypointsOnly, mprin2,
+                autoPositionContext());
+    }
 
+    /** @return the editor state besides the diagram itself that
+        auto-positioning depends on. */
+    AutoPositionContext autoPositionContext() {
+        AutoPositionContext res = new AutoPositionContext();
+        if (selection != null) {
+            // For autopositioning purposes, ignore the
+            // precise spot we picked and focus on the
+            // highlighted vertex.
+            DecorationHandle d = (selection instanceof Interp2DHandle2)
+                ? ((Interp2DHandle2) selection).indexHandle()
+                : selection;
+            res.selection = principalLocation(d);
+            res.selectionIsArc = selection.getDecoration() instanceof ArcDecoration;
+        }
+        if (res.selection != null) {
+            res.secondary = principalLocation(secondarySelection());
+        }
+        res.gridVectors = gridVectors();
+        res.scale = scale;
         return res;
     }
 
@@ -6881,7 +6911,7 @@ public class BasicEditor extends Diagram
             return;
         }
         try {
-            EditorState.copyToEditor(this, undoStack.get(undoStackOffset));
+            EditorState.copyToEditor(this, null, undoStack.get(undoStackOffset));
         } catch (IOException e) {
             e.printStackTrace();
         } finally {
@@ -6890,26 +6920,45 @@ public class BasicEditor extends Diagram
     }
 
     void saveState() {
+        saveCurrentState();
+    }
+
+    /** Like saveState(), but return the undo stack entry that matches
+        the current diagram, or null if the state could not be
+        saved. */
+    private EditorState.StoredState saveCurrentState() {
         if (!isEditable()) {
-            return;
+            return null;
         }
 
         try {
-            EditorState.StringAndTransientState state = EditorState.toStringAndTransientState(this);
-
-            if (undoStackOffset > 0 &&
-                    state.str.equals(undoStack.get(undoStackOffset - 1).str)) {
-                // The state is already saved.
-                return;
+            EditorState.StoredState state = EditorState.toStoredState(this);
+
+            if (undoStackOffset > 0) {
+                EditorState.StoredState prev = undoStack.get(undoStackOffset - 1);
+                state.share(prev);
+                if (state.sameDiagram(prev)) {
+                    // The state is already saved.
+                    prev.version = version;
+                    return prev;
+                }
             }
-            if (undoStackOffset < undoStack.size() &&
-                    state.str.equals(undoStack.get(undoStackOffset).str)) {
-                // Move the stack offset past the current state, which
-                // is already saved.
-                undoStackOffset++;
-                return;
+            if (undoStackOffset < undoStack.size()) {
+                EditorState.StoredState next = undoStack.get(undoStackOffset);
+                if (state.sameDiagram(next)) {
+                    // Move the stack offset past the current state, which
+                    // is already saved.
+                    undoStackOffset++;
+                    next.version = version;
+                    return next;
+                }
             }
 
+            // The diagram differs from the last saved state. Bump the
+            // version in case the change did not call
+            // propagateChange().
+            ++version;
+
             // Clear any items left to redo.
             while (undoStackOffset < undoStack.size()) {
                 undoStack.remove(undoStack.size() - 1);
@@ -6917,43 +6966,59 @@ public class BasicEditor extends Diagram
 
             trimUndoStack();
             changesSinceStateSaved = 0;
+            state.version = version;
             undoStack.add(state);
             ++ undoStackOffset;
+            return state;
         } catch (IOException e) {
             e.printStackTrace();
+            return null;
         }
     }
 
+    /** Maximum number of undo stack entries. */
+    static final int MAX_UNDO_DEPTH = 500;
+    /** Maximum number of bytes in the undo stack, not counting the
+        first entry or values shared between entries. */
+    static final long MAX_UNDO_SIZE = 20_000_000;
+
     /**
      * Ensure the undo stack doesn't get too big or too long.
      */
     private void trimUndoStack() {
-        if (undoStack.size() >= 25) {
-            undoStack.remove(1);
-            if (undoStackOffset >= 1) {
-                --undoStackOffset;
-            }
+        if (undoStack.size() >= MAX_UNDO_DEPTH) {
+            removeUndoEntry(1);
         }
-        int totalBytes = 0;
+        long totalSize = 0;
         for (int i = undoStack.size() - 1; i >= 1; --i) {
-            if (totalBytes > 20_000_000) {
-                undoStack.remove(i);
-                if (undoStackOffset >= i) {
-                    -- undoStackOffset;
-                }
+            totalSize += undoStack.get(i).size;
+            if (totalSize > MAX_UNDO_SIZE) {
+                removeUndoEntry(i);
             }
-            totalBytes += undoStack.get(i).str.length();
+        }
+    }
+
+    private void removeUndoEntry(int i) {
+        undoStack.remove(i);
+        if (undoStackOffset > i) {
+            -- undoStackOffset;
+        }
+        if (i >= 1 && i < undoStack.size()) {
+            // The next entry's size was computed relative to the
+            // removed one.
+            undoStack.get(i).share(undoStack.get(i - 1));
         }
     }
 
     public void undo() {
         try {
-            saveState();
+            EditorState.StoredState current = saveCurrentState();
             if (undoStackOffset < 2) {
                 showError("Cannot undo any more operations.");
                 return;
             }
-            EditorState.copyToEditor(this, undoStack.get(undoStackOffset - 2));
+            EditorState.copyToEditor(this, current,
+                    undoStack.get(undoStackOffset - 2));
             --undoStackOffset;
         } catch (IOException e) {
             showError("This operation cannot be undone.");
@@ -6970,4 +7035,12 @@ public class BasicEditor extends Diagram
             revalidateZoomFrame();
         }
     }
+
+    @Override void setDecorations(ArrayList<Decoration> ds) {
+        SourceImage oldImage = firstImage();
+        super.setDecorations(ds);
+        if (firstImage() != oldImage) {
+            revalidateZoomFrame();
+        }
+    }
 }
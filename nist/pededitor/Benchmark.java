@@ -0,0 +1,122 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Shared driver code for the command-line benchmarks such as
+    DistanceBenchmark. A benchmark times two or more methods on each
+    of the files named on its command line, prints a table of the
+    results, and checks that the methods agree. If any check fails,
+    finish() exits with status 1. */
+class Benchmark {
+    /** A method to be timed. The int argument identifies which of
+        the methods being compared to run. */
+    interface Method<T, E extends Exception> {
+        T run(int method) throws E;
+    }
+
+    /** Number of failed checks so far. */
+    static int failures = 0;
+
+    /** Print a usage message for benchmark class c and exit unless
+        args is non-empty. */
+    static void checkUsage(String[] args, Class<?> c, String description) {
+        if (args.length > 0) {
+            return;
+        }
+        System.err.println
+            ("Usage:\n\n"
+             + "    java " + c.getName() + " <PED file>..."
+             + ((description == null) ? "" : ("\n\n" + description)));
+        System.exit(1);
+    }
+
+    /** @return the diagram in filename, or null after printing the
+        reason if it could not be loaded. */
+    static Diagram load(String filename) {
+        try {
+            return Diagram.loadFrom(new File(filename));
+        } catch (IOException x) {
+            System.err.println(filename + ": " + x);
+            return null;
+        }
+    }
+
+    /** @return the name of filename without its directory. */
+    static String name(String filename) {
+        return new File(filename).getName();
+    }
+
+    static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /** Run methods 0 through methodCnt-1 in order, twice, and return
+        the results of the second pass, so that all of the methods
+        benefit equally from JIT compilation. */
+    static <T, E extends Exception> List<T> secondPass(int methodCnt,
+            Method<T, E> method) throws E {
+        ArrayList<T> res = new ArrayList<>();
+        for (int pass = 0; pass < 2; ++pass) {
+            res.clear();
+            for (int i = 0; i < methodCnt; ++i) {
+                res.add(method.run(i));
+            }
+        }
+        return res;
+    }
+
+    /** If ok is false, print the message and count a failure. */
+    static void check(boolean ok, String format, Object... args) {
+        if (!ok) {
+            ++failures;
+            System.err.println("FAILED: " + String.format(format, args));
+        }
+    }
+
+    /** Exit with status 1 if any check failed. */
+    static void finish() {
+        if (failures > 0) {
+            System.err.println(failures + " check(s) failed.");
+            System.exit(1);
+        }
+    }
+
+    /** @return cnt random points in or near d's page bounds. */
+    static Point2D.Double[] randomPagePoints(Diagram d, int cnt, long seed) {
+        Random r = new Random(seed);
+        Rectangle2D b = d.getPageBounds();
+        Point2D.Double[] res = new Point2D.Double[cnt];
+        for (int i = 0; i < res.length; ++i) {
+            res[i] = new Point2D.Double(
+                    b.getX() + b.getWidth() * (r.nextDouble() * 1.2 - 0.1),
+                    b.getY() + b.getHeight() * (r.nextDouble() * 1.2 - 0.1));
+        }
+        return res;
+    }
+
+    /** A table whose header is printed when the table is created.
+        The header uses the same column widths as the row format. */
+    static class Table {
+        final String format;
+
+        Table(String format, String... names) {
+            this.format = format;
+            String headerFormat = format.replaceAll
+                ("%(-?\\d*)(\\.\\d+)?[a-zA-Z]", "%$1s");
+            System.out.println(String.format(headerFormat, (Object[]) names));
+        }
+
+        void row(Object... values) {
+            System.out.println(String.format(format, values));
+        }
+    }
+}
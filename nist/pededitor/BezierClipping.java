@@ -0,0 +1,349 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+
+/** Curve/curve intersection by Bezier clipping (Sederberg and
+    Nishita, 1990). Each step bounds one curve by a "fat line" -- the
+    region between two parallel lines that contains all of its
+    control points -- and uses the convex hull of the other curve's
+    control points to clip away the parameter ranges of the other
+    curve that cannot lie inside that fat line. This usually
+    converges quadratically, including for near-tangent curves that
+    the bounding-box method in BoundedParam2Ds.intersections() has
+    trouble with.
+
+    Only curves whose control points can be obtained from
+    controlPoints() are supported. */
+public class BezierClipping {
+    /** If a clipping step fails to shrink a curve's parameter range
+        to less than this fraction of its previous value, then bisect
+        the larger curve instead. */
+    static final double MIN_CLIP_FRACTION = 0.8;
+
+    /** @return the Bezier control points of c over its domain as
+        { xs, ys }, or null if c is not a BezierParam2D or a subset or
+        offset of one. */
+    public static double[][] controlPoints(BoundedParam2D c) {
+        if (c instanceof OffsetParam2D) {
+            return controlPoints(((OffsetParam2D) c).getContents());
+        }
+
+        Param2D p = c;
+        if (c instanceof Param2DBounder) {
+            p = ((Param2DBounder) c).getUnboundedCurve();
+        }
+        if (!(p instanceof BezierParam2D)) {
+            return null;
+        }
+        Point2D.Double[] points = ((BezierParam2D) p).points;
+        int len = points.length;
+        double[] xs = new double[len];
+        double[] ys = new double[len];
+        for (int i = 0; i < len; ++i) {
+            xs[i] = points[i].x;
+            ys[i] = points[i].y;
+        }
+        double t0 = c.getMinT();
+        double t1 = c.getMaxT();
+        if (c instanceof Param2DBounder && (t0 != 0 || t1 != 1)) {
+            subset(xs, t0, t1);
+            subset(ys, t0, t1);
+        }
+        return new double[][] { xs, ys };
+    }
+
+    /** Replace the 1-D Bezier control values bezs with the control
+        values for the subset of the curve with t in [t0, t1]. */
+    static void subset(double[] bezs, double t0, double t1) {
+        int n = bezs.length;
+        // Keep the [0, t1] part...
+        for (int i = 1; i < n; ++i) {
+            for (int j = n - 1; j >= i; --j) {
+                bezs[j] = bezs[j - 1] + t1 * (bezs[j] - bezs[j - 1]);
+            }
+        }
+        // ...and then the [t0/t1, 1] part of that.
+        if (t0 == 0 || t1 == 0) {
+            return;
+        }
+        double u = t0 / t1;
+        for (int i = 1; i < n; ++i) {
+            for (int j = 0; j < n - i; ++j) {
+                bezs[j] = bezs[j] + u * (bezs[j + 1] - bezs[j]);
+            }
+        }
+    }
+
+    /** @return a copy of the control points { xs, ys } restricted to
+        the parameter range [t0, t1]. */
+    static double[][] subset(double[][] c, double t0, double t1) {
+        double[] xs = c[0].clone();
+        double[] ys = c[1].clone();
+        subset(xs, t0, t1);
+        subset(ys, t0, t1);
+        return new double[][] { xs, ys };
+    }
+
+    /** @return the larger of the width and height of the bounding box
+        of c's control points. */
+    static double size(double[][] c) {
+        return Math.max(range(c[0]), range(c[1]));
+    }
+
+    static double range(double[] vs) {
+        double min = vs[0];
+        double max = vs[0];
+        for (double v: vs) {
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+        }
+        return max - min;
+    }
+
+    /** @return true if the ranges of as and bs overlap or are
+        separated by no more than tolerance. */
+    static boolean boundsOverlap(double[] as, double[] bs, double tolerance) {
+        double amin = as[0], amax = as[0], bmin = bs[0], bmax = bs[0];
+        for (double v: as) {
+            amin = Math.min(amin, v);
+            amax = Math.max(amax, v);
+        }
+        for (double v: bs) {
+            bmin = Math.min(bmin, v);
+            bmax = Math.max(bmax, v);
+        }
+        return amin <= bmax + tolerance && bmin <= amax + tolerance;
+    }
+
+    /** Compute the fat line for curve c.
+
+        @return { nx, ny, k, dmin, dmax } such that every point (x,y)
+        on c satisfies dmin <= nx * x + ny * y + k <= dmax, where
+        (nx, ny) is a unit vector. */
+    static double[] fatLine(double[][] c) {
+        double[] xs = c[0];
+        double[] ys = c[1];
+        int n = xs.length - 1;
+
+        // The line runs from the first control point to the last, or
+        // to the control point farthest from the first if the curve
+        // is closed.
+        double dx = xs[n] - xs[0];
+        double dy = ys[n] - ys[0];
+        if (dx == 0 && dy == 0) {
+            double maxDistSq = 0;
+            for (int i = 1; i < n; ++i) {
+                double ex = xs[i] - xs[0];
+                double ey = ys[i] - ys[0];
+                double distSq = ex * ex + ey * ey;
+                if (distSq > maxDistSq) {
+                    maxDistSq = distSq;
+                    dx = ex;
+                    dy = ey;
+                }
+            }
+            if (maxDistSq == 0) {
+                dx = 1;
+            }
+        }
+        double len = Math.sqrt(dx * dx + dy * dy);
+        double nx = -dy / len;
+        double ny = dx / len;
+        double k = -(nx * xs[0] + ny * ys[0]);
+
+        double[] ds = new double[n + 1];
+        for (int i = 0; i <= n; ++i) {
+            ds[i] = nx * xs[i] + ny * ys[i] + k;
+        }
+
+        double dmin;
+        double dmax;
+        boolean endsOnLine = ds[0] == 0 && Math.abs(ds[n]) < 1e-12 * len;
+        if (endsOnLine && n == 2) {
+            // A quadratic curve strays at most half as far from its
+            // chord as its middle control point does.
+            dmin = Math.min(0, ds[1] / 2);
+            dmax = Math.max(0, ds[1] / 2);
+        } else if (endsOnLine && n == 3) {
+            // Tighter bounds for cubics from Sederberg and Nishita.
+            double f = (ds[1] * ds[2] > 0) ? 3.0 / 4 : 4.0 / 9;
+            dmin = f * Math.min(0, Math.min(ds[1], ds[2]));
+            dmax = f * Math.max(0, Math.max(ds[1], ds[2]));
+        } else {
+            dmin = 0;
+            dmax = 0;
+            for (double d: ds) {
+                dmin = Math.min(dmin, d);
+                dmax = Math.max(dmax, d);
+            }
+        }
+        return new double[] { nx, ny, k, dmin, dmax };
+    }
+
+    /** @return the range { u0, u1 } of parameter values in [0, 1]
+        for which curve c might lie inside the given fat line, or null
+        if there are none. */
+    static double[] clipRange(double[][] c, double[] fat) {
+        double[] xs = c[0];
+        double[] ys = c[1];
+        int n = xs.length - 1;
+        double nx = fat[0], ny = fat[1], k = fat[2];
+        double dmin = fat[3], dmax = fat[4];
+
+        // The distance from the fat line's center line to c(u) is
+        // itself a Bezier function with control points (i/n, e[i]),
+        // so its graph lies within the convex hull of those points.
+        // Find the u-extent of the part of that hull that lies
+        // between dmin and dmax. Every hull edge joins two control
+        // points, so it suffices to check every pair of them.
+        double[] es = new double[n + 1];
+        for (int i = 0; i <= n; ++i) {
+            es[i] = nx * xs[i] + ny * ys[i] + k;
+        }
+
+        double u0 = Double.POSITIVE_INFINITY;
+        double u1 = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i <= n; ++i) {
+            double ui = (double) i / n;
+            double ei = es[i];
+            if (ei >= dmin && ei <= dmax) {
+                u0 = Math.min(u0, ui);
+                u1 = Math.max(u1, ui);
+            }
+            for (int j = i + 1; j <= n; ++j) {
+                double uj = (double) j / n;
+                double ej = es[j];
+                for (double bound: new double[] { dmin, dmax }) {
+                    if ((ei - bound) * (ej - bound) < 0) {
+                        double u = ui + (uj - ui) * (bound - ei) / (ej - ei);
+                        u0 = Math.min(u0, u);
+                        u1 = Math.max(u1, u);
+                    }
+                }
+            }
+        }
+
+        if (u0 > u1) {
+            return null;
+        }
+        return new double[] { Math.max(0, u0), Math.min(1, u1) };
+    }
+
+    /** Like {@link BoundedParam2Ds#intersections(ArrayList,
+        BoundedParam2D, BoundedParam2D, double, int)}, but returns -1
+        without doing anything if the curves' bounds overlap and a or
+        b is not supported. */
+    public static int intersections(ArrayList<Point2D.Double> is,
+            BoundedParam2D a, BoundedParam2D b,
+            double maxError, int maxSteps) {
+        // Most pairs of curves are far apart, so check that quickly
+        // before extracting the control points.
+        Rectangle2D.Double ab = a.getBounds();
+        Rectangle2D.Double bb = b.getBounds();
+        double tolerance = maxError / 4;
+        if (ab.x > bb.x + bb.width + tolerance
+            || bb.x > ab.x + ab.width + tolerance
+            || ab.y > bb.y + bb.height + tolerance
+            || bb.y > ab.y + ab.height + tolerance) {
+            return 1;
+        }
+        double[][] ac = controlPoints(a);
+        double[][] bc = controlPoints(b);
+        if (ac == null || bc == null) {
+            return -1;
+        }
+        return intersections(is, ac, bc, maxError, maxSteps);
+    }
+
+    /** Append the intersections of a and b to is, where a and b are
+        arrays of control points as returned by controlPoints().
+
+        @return the number of steps taken. If the return value is
+        greater than maxSteps, then the search was cut short. */
+    static int intersections(ArrayList<Point2D.Double> is,
+            double[][] a, double[][] b, double maxError, int maxSteps) {
+        int stepCnt = 1;
+        // Allow a little slack in the overlap test, or else roundoff
+        // error can cause an intersection to be lost once both curves
+        // have been clipped down to a single point.
+        double tolerance = maxError / 4;
+        if (!boundsOverlap(a[0], b[0], tolerance)
+            || !boundsOverlap(a[1], b[1], tolerance)) {
+            return stepCnt;
+        }
+
+        double aSize = size(a);
+        double bSize = size(b);
+        if (aSize <= maxError / 4 && bSize <= maxError / 4) {
+            // In each dimension, every point of either curve lies
+            // within maxError * 5/8 of the center of a's control
+            // point bounds, so both curves approach that point to
+            // within maxError.
+            Point2D.Double p = new Point2D.Double(
+                    (min(a[0]) + max(a[0])) / 2,
+                    (min(a[1]) + max(a[1])) / 2);
+            for (Point2D.Double old: is) {
+                if (old.distance(p) <= maxError) {
+                    return stepCnt; // Duplicate
+                }
+            }
+            is.add(p);
+            return stepCnt;
+        }
+
+        double[] range = clipRange(a, fatLine(b));
+        if (range == null) {
+            return stepCnt;
+        }
+
+        if (range[1] - range[0] > MIN_CLIP_FRACTION) {
+            // Clipping isn't helping much, so bisect the larger curve.
+            // Swap a and b in the next recursion step.
+            if (aSize >= bSize) {
+                for (double[][] half: new double[][][] {
+                            subset(a, 0, 0.5), subset(a, 0.5, 1) }) {
+                    if (stepCnt > maxSteps) {
+                        return stepCnt;
+                    }
+                    stepCnt += intersections(is, b, half, maxError,
+                            maxSteps - stepCnt);
+                }
+            } else {
+                for (double[][] half: new double[][][] {
+                            subset(b, 0, 0.5), subset(b, 0.5, 1) }) {
+                    if (stepCnt > maxSteps) {
+                        return stepCnt;
+                    }
+                    stepCnt += intersections(is, half, a, maxError,
+                            maxSteps - stepCnt);
+                }
+            }
+            return stepCnt;
+        }
+
+        // Swap a and b in the next recursion step.
+        return stepCnt + intersections(is, b, subset(a, range[0], range[1]),
+                maxError, maxSteps - stepCnt);
+    }
+
+    static double min(double[] vs) {
+        double res = vs[0];
+        for (double v: vs) {
+            res = Math.min(res, v);
+        }
+        return res;
+    }
+
+    static double max(double[] vs) {
+        double res = vs[0];
+        for (double v: vs) {
+            res = Math.max(res, v);
+        }
+        return res;
+    }
+}
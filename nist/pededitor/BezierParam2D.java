@@ -17,6 +17,10 @@ abstract public class BezierParam2D extends BoundedParam2DAdapter
     final double[] xCoefficients;
     /** Polynomial y(t) coefficients */
     final double[] yCoefficients;
+    /** Polynomial x'(t) coefficients */
+    final double[] xDerivCoefficients;
+    /** Polynomial y'(t) coefficients */
+    final double[] yDerivCoefficients;
 
     /** Bezier control points. #0 is the start and #(length-1) is the
         end, but intermediate control points usually do not lie on the
@@ -36,6 +40,8 @@ abstract public class BezierParam2D extends BoundedParam2DAdapter
         }
         xCoefficients = bezierToPoly(xs);
         yCoefficients = bezierToPoly(ys);
+        xDerivCoefficients = Polynomial.derivative(xCoefficients);
+        yDerivCoefficients = Polynomial.derivative(yCoefficients);
     }
 
     public static BoundedParam2D create(Point2D... points) {
@@ -80,6 +86,105 @@ abstract public class BezierParam2D extends BoundedParam2DAdapter
              Polynomial.evaluateDerivative(t, yCoefficients));
     }
 
+    @Override public double getSpeed(double t) {
+        double dx = Polynomial.evaluateDerivative(t, xCoefficients);
+        double dy = Polynomial.evaluateDerivative(t, yCoefficients);
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /** Set (xs[i], ys[i]) to getLocation(ts[i]) for every i without
+        allocating anything. */
+    public void getLocations(double[] ts, double[] xs, double[] ys) {
+        evaluate(xCoefficients, ts, xs);
+        evaluate(yCoefficients, ts, ys);
+    }
+
+    /** Set (dxs[i], dys[i]) to getDerivative(ts[i]) for every i
+        without allocating anything. */
+    @Override public void getDerivatives(double[] ts, double[] dxs, double[] dys) {
+        evaluateDerivative(xCoefficients, ts, dxs);
+        evaluateDerivative(yCoefficients, ts, dys);
+    }
+
+    /** Set out[i] = poly(ts[i]) for every i. The common cases are
+        unrolled. */
+    static void evaluate(double[] poly, double[] ts, double[] out) {
+        int cnt = ts.length;
+        switch (poly.length) {
+        case 0:
+            Arrays.fill(out, 0, cnt, 0);
+            return;
+        case 1:
+            Arrays.fill(out, 0, cnt, poly[0]);
+            return;
+        case 2:
+            {
+                double k0 = poly[0], k1 = poly[1];
+                for (int i = 0; i < cnt; ++i) {
+                    out[i] = k0 + ts[i] * k1;
+                }
+                return;
+            }
+        case 3:
+            {
+                double k0 = poly[0], k1 = poly[1], k2 = poly[2];
+                for (int i = 0; i < cnt; ++i) {
+                    double t = ts[i];
+                    out[i] = k0 + t * (k1 + t * k2);
+                }
+                return;
+            }
+        case 4:
+            {
+                double k0 = poly[0], k1 = poly[1], k2 = poly[2], k3 = poly[3];
+                for (int i = 0; i < cnt; ++i) {
+                    double t = ts[i];
+                    out[i] = k0 + t * (k1 + t * (k2 + t * k3));
+                }
+                return;
+            }
+        default:
+            for (int i = 0; i < cnt; ++i) {
+                out[i] = Polynomial.evaluate(ts[i], poly);
+            }
+        }
+    }
+
+    /** Set out[i] = poly'(ts[i]) for every i. */
+    static void evaluateDerivative(double[] poly, double[] ts, double[] out) {
+        int cnt = ts.length;
+        switch (poly.length) {
+        case 0:
+        case 1:
+            Arrays.fill(out, 0, cnt, 0);
+            return;
+        case 2:
+            Arrays.fill(out, 0, cnt, poly[1]);
+            return;
+        case 3:
+            {
+                double k1 = poly[1], k2 = 2 * poly[2];
+                for (int i = 0; i < cnt; ++i) {
+                    out[i] = k1 + ts[i] * k2;
+                }
+                return;
+            }
+        case 4:
+            {
+                double k1 = poly[1], k2 = 2 * poly[2], k3 = 3 * poly[3];
+                for (int i = 0; i < cnt; ++i) {
+                    double t = ts[i];
+                    out[i] = k1 + t * (k2 + t * k3);
+                }
+                return;
+            }
+        default:
+            for (int i = 0; i < cnt; ++i) {
+                out[i] = Polynomial.evaluateDerivative(ts[i], poly);
+            }
+        }
+    }
+
     public Point2D.Double[] getControlPoints() {
         return Geom.deepCopy(points);
     }
@@ -298,8 +403,7 @@ abstract public class BezierParam2D extends BoundedParam2DAdapter
     @Override public double area(double t0, double t1) {
         // The signed area can be calculated directly using the definition
         // area = integral(y * dx).
-        double[] dx = Polynomial.derivative(xCoefficients);
-        double[] ydx = Polynomial.times(dx, yCoefficients);
+        double[] ydx = Polynomial.times(xDerivCoefficients, yCoefficients);
         return Polynomial.evaluateIntegral(t0, t1, ydx);
     }
 
@@ -316,13 +420,13 @@ abstract public class BezierParam2D extends BoundedParam2DAdapter
         // distances is always less than sqrt(2):1, these two
         // approximations will not be too far apart.
 
-        double[] xZeroes = Polynomial.solve(Polynomial.derivative(xCoefficients));
-        double[] yZeroes = Polynomial.solve(Polynomial.derivative(yCoefficients));
-        ArrayList<Double> ts = new ArrayList<>();
-        ts.add(t0);
+        double[] xZeroes = Polynomial.solve(xDerivCoefficients);
+        double[] yZeroes = Polynomial.solve(yDerivCoefficients);
+        ArrayList<Double> tList = new ArrayList<>();
+        tList.add(t0);
         for (double t: xZeroes) {
             if (t > t0 && t < t1) {
-                ts.add(t);
+                tList.add(t);
             }
         }
         int pos = 1;
@@ -330,8 +434,8 @@ abstract public class BezierParam2D extends BoundedParam2DAdapter
             if (t > t0 && t < t1) {
                 while (true) {
                     double other = 0;
-                    if (pos == ts.size() || (other = ts.get(pos)) > t) {
-                        ts.add(t); // add new t value
+                    if (pos == tList.size() || (other = tList.get(pos)) > t) {
+                        tList.add(pos, t); // add new t value
                         ++pos;
                         break;
                     } else if (t == other) {
@@ -343,23 +447,27 @@ abstract public class BezierParam2D extends BoundedParam2DAdapter
                 }
             }
         }
-        ts.add(t1);
+        tList.add(t1);
 
-        Point2D.Double oldPoint = null;
+        int cnt = tList.size();
+        double[] ts = new double[cnt];
+        for (int i = 0; i < cnt; ++i) {
+            ts[i] = tList.get(i);
+        }
+        double[] xs = new double[cnt];
+        double[] ys = new double[cnt];
+        getLocations(ts, xs, ys);
         double maxLength = 0;
         double minLength = 0;
-        for (double t: ts) {
-            Point2D.Double p = getLocation(t);
-            if (oldPoint != null) {
-                minLength += oldPoint.distance(p);
-                maxLength += Math.abs(oldPoint.x - p.x)
-                    + Math.abs(oldPoint.y - p.y);
-            }
-            oldPoint = p;
+        for (int i = 1; i < cnt; ++i) {
+            double dx = Math.abs(xs[i] - xs[i-1]);
+            double dy = Math.abs(ys[i] - ys[i-1]);
+            minLength += Math.sqrt(dx * dx + dy * dy);
+            maxLength += dx + dy;
         }
         Estimate res = new Estimate((minLength + maxLength) / 2);
         res.setLowerBound(minLength);
-        res.setLowerBound(maxLength);
+        res.setUpperBound(maxLength);
         return res;
     }
 
@@ -371,14 +479,79 @@ abstract public class BezierParam2D extends BoundedParam2DAdapter
              xBounds[1] - xBounds[0], yBounds[1] - yBounds[0]);
     }
 
+    /** This is called at every step of the recursion in
+        BoundedParam2Ds.intersections(), so for curves of degree 3 or
+        less it finds the critical points of the linear function
+        directly with the quadratic formula instead of building and
+        solving new polynomials, and the only allocation is the
+        return value. */
     @Override public double[] getBounds
         (double xc, double yc, double t0, double t1) {
-        int s = xCoefficients.length;
-        double[] poly = new double[s];
-        for (int i = 0; i < s; ++i) {
-            poly[i] = xCoefficients[i] * xc + yCoefficients[i] * yc;
+        double[] xcs = xCoefficients;
+        double[] ycs = yCoefficients;
+        int s = xcs.length;
+        if (s > 4) {
+            double[] poly = new double[s];
+            for (int i = 0; i < s; ++i) {
+                poly[i] = xcs[i] * xc + ycs[i] * yc;
+            }
+            return Polynomial.getBounds(poly, t0, t1);
         }
-        return Polynomial.getBounds(poly, t0, t1);
+
+        // The linear function is p0 + p1 t + p2 t^2 + p3 t^3.
+        double p0 = (s > 0) ? xcs[0] * xc + ycs[0] * yc : 0;
+        double p1 = (s > 1) ? xcs[1] * xc + ycs[1] * yc : 0;
+        double p2 = (s > 2) ? xcs[2] * xc + ycs[2] * yc : 0;
+        double p3 = (s > 3) ? xcs[3] * xc + ycs[3] * yc : 0;
+
+        double v0 = cubic(p0, p1, p2, p3, t0);
+        double v1 = cubic(p0, p1, p2, p3, t1);
+        double min = Math.min(v0, v1);
+        double max = Math.max(v0, v1);
+
+        // Its derivative is c0 + c1 t + c2 t^2.
+        double c0 = p1;
+        double c1 = 2 * p2;
+        double c2 = 3 * p3;
+        double r1 = Double.NaN;
+        double r2 = Double.NaN;
+
+        if (c2 == 0) {
+            if (c1 != 0) {
+                r1 = -c0 / c1;
+            }
+        } else {
+            double discriminant = c1 * c1 - 4 * c2 * c0;
+            if (discriminant >= 0) {
+                // Stable form of the quadratic formula.
+                double q = -(c1 + Math.copySign(Math.sqrt(discriminant), c1)) / 2;
+                if (q == 0) {
+                    r1 = 0;
+                } else {
+                    r1 = q / c2;
+                    r2 = c0 / q;
+                }
+            }
+        }
+
+        // NaN comparisons are false, so absent roots are skipped.
+        if (t0 <= r1 && r1 <= t1) {
+            double v = cubic(p0, p1, p2, p3, r1);
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+        }
+        if (t0 <= r2 && r2 <= t1) {
+            double v = cubic(p0, p1, p2, p3, r2);
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+        }
+        return new double[] { min, max };
+    }
+
+    /** @return p0 + p1 t + p2 t^2 + p3 t^3. */
+    static double cubic(double p0, double p1, double p2, double p3,
+            double t) {
+        return ((p3 * t + p2) * t + p1) * t + p0;
     }
 
     @Override public String toString() {
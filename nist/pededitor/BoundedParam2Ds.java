@@ -7,6 +7,7 @@ import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.function.DoubleUnaryOperator;
 
@@ -15,6 +16,11 @@ import java.util.function.DoubleUnaryOperator;
  * and {@link #distance} methods. */
 public class BoundedParam2Ds {
     static final boolean debug = false;
+    /** If true, then intersections() uses Bezier clipping (see
+        {@link BezierClipping}) for pairs of Bezier curves instead of
+        recursive subdivision. IntersectionBenchmark checks that both
+        methods find the same intersections. */
+    public static boolean useBezierClipping = true;
     /** Return the t value that is closest to t that is also in the
         domain of c. */
     public static double constrainToDomain(BoundedParam2D c, double t) {
@@ -46,6 +52,158 @@ public class BoundedParam2Ds {
         that also identifies which curve is closest. */
     static <T extends BoundedParam2D> CurveDistanceRange distance(
             Iterable<T> ocps, Point2D p, double maxError, double maxSteps) {
+        return distance(ocps, p, maxError, maxSteps, null);
+    }
+
+    /** Min-heap of curves ordered by the lower bound on their
+        distance from some point. Parallel arrays are used instead of
+        a PriorityQueue of wrapper objects to avoid an allocation per
+        entry. */
+    static class DistanceHeap {
+        BoundedParam2D[] params = new BoundedParam2D[16];
+        double[] minDistances = new double[16];
+        int size = 0;
+
+        void add(BoundedParam2D param, double minDistance) {
+            if (size == params.length) {
+                params = Arrays.copyOf(params, size * 2);
+                minDistances = Arrays.copyOf(minDistances, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (minDistances[parent] <= minDistance) {
+                    break;
+                }
+                params[i] = params[parent];
+                minDistances[i] = minDistances[parent];
+                i = parent;
+            }
+            params[i] = param;
+            minDistances[i] = minDistance;
+        }
+
+        /** @return the smallest minDistance in the heap. */
+        double peekMinDistance() {
+            return minDistances[0];
+        }
+
+        /** Remove and return the entry with the smallest minDistance. */
+        BoundedParam2D poll() {
+            BoundedParam2D res = params[0];
+            --size;
+            BoundedParam2D param = params[size];
+            double minDistance = minDistances[size];
+            params[size] = null;
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size
+                        && minDistances[child + 1] < minDistances[child]) {
+                    ++child;
+                }
+                if (minDistances[child] >= minDistance) {
+                    break;
+                }
+                params[i] = params[child];
+                minDistances[i] = minDistances[child];
+                i = child;
+            }
+            if (size > 0) {
+                params[i] = param;
+                minDistances[i] = minDistance;
+            }
+            return res;
+        }
+    }
+
+    /** Like distance(ocps, p, maxError, maxSteps), but if stepCnt is
+        not null, also store the number of distance estimates computed
+        in stepCnt[0].
+
+        This is a best-first branch-and-bound search: the curve whose
+        lower bound on distance is least is always the next one to be
+        bisected, and a curve is discarded as soon as its lower bound
+        shows that it cannot improve the best distance found so far by
+        more than maxError. */
+    static <T extends BoundedParam2D> CurveDistanceRange distance(
+            Iterable<T> ocps, Point2D p, double maxError, double maxSteps,
+            int[] stepCnt) {
+        DistanceHeap heap = new DistanceHeap();
+        CurveDistanceRange best = null;
+        int steps = 0;
+
+        // Lower bound on the distance to any curve that was discarded.
+        double discardedMin = Double.POSITIVE_INFINITY;
+
+        for (BoundedParam2D cp: ocps) {
+            CurveDistanceRange dist = cp.distance(p);
+            ++steps;
+            if (best == null || dist.distance < best.distance) {
+                best = dist;
+            }
+            heap.add(cp, dist.minDistance);
+        }
+
+        if (stepCnt != null) {
+            stepCnt[0] = steps;
+        }
+        if (best == null) {
+            return null;
+        }
+
+        while (heap.size > 0) {
+            double cutoffDistance = best.distance - maxError;
+            if (heap.peekMinDistance() >= cutoffDistance
+                || steps >= maxSteps) {
+                break;
+            }
+
+            BoundedParam2D cp = heap.poll();
+            if (debug) {
+                System.out.println("Bisecting [" + cp.getMinT() + ", "
+                                   + cp.getMaxT() + "]");
+            }
+
+            for (BoundedParam2D param: cp.subdivide()) {
+                CurveDistanceRange dist = param.distance(p);
+                ++steps;
+                if (dist.distance < best.distance) {
+                    best = dist;
+                    cutoffDistance = best.distance - maxError;
+                }
+                if (dist.minDistance < cutoffDistance) {
+                    heap.add(param, dist.minDistance);
+                } else {
+                    discardedMin = Math.min(discardedMin, dist.minDistance);
+                }
+            }
+        }
+
+        if (stepCnt != null) {
+            stepCnt[0] = steps;
+        }
+
+        double minDistance = Math.min(best.distance, discardedMin);
+        if (heap.size > 0) {
+            minDistance = Math.min(minDistance, heap.peekMinDistance());
+        }
+        return new CurveDistanceRange(best, minDistance);
+    }
+
+    /** Reference implementation of distance() that bisects every
+        candidate curve level by level instead of searching
+        best-first. It is retained for comparison by
+        DistanceBenchmark.
+
+        @param stepCnt If not null, the number of distance estimates
+        computed is stored in stepCnt[0]. */
+    static <T extends BoundedParam2D> CurveDistanceRange levelOrderDistance(
+            Iterable<T> ocps, Point2D p, double maxError, double maxSteps,
+            int[] stepCnt) {
     	ArrayList<BoundedParam2D> cps = new ArrayList<>();
     	for (BoundedParam2D cp: ocps) {
     		cps.add(cp);
@@ -60,10 +218,14 @@ public class BoundedParam2Ds {
         }
 
         if (cps.size() == 0) {
+            if (stepCnt != null) {
+                stepCnt[0] = 0;
+            }
             return null;
         }
 
         CurveDistanceRange minDist = null;
+        int steps = 0;
         for (int step = 0;; ++step) {
             if (debug) {
                 System.out.println("Step " + step);
@@ -134,8 +296,12 @@ public class BoundedParam2Ds {
             }
 
             maxSteps -= cps.size();
+            steps += cps.size();
             if (ncps.size() == 0 /* Error <= maxError */
                 || maxSteps < 0 /* Too many iterations */) {
+                if (stepCnt != null) {
+                    stepCnt[0] = steps;
+                }
                 return minDist;
             }
 
@@ -411,16 +577,43 @@ public class BoundedParam2Ds {
             double maxError, int maxSteps)
         throws FailedToConvergeException {
         ArrayList<Point2D.Double> res = new ArrayList<>();
-        int steps = intersections(res, a, b, maxError, maxSteps);
+        int steps = -1;
+        if (useBezierClipping) {
+            steps = BezierClipping.intersections(res, a, b, maxError, maxSteps);
+        }
+        if (steps < 0) {
+            steps = intersections(res, a, b, maxError, maxSteps);
+        }
         if (steps > maxSteps) {
             throw new FailedToConvergeException
                 ("Could not compute intersections to within " + maxError
                  + " accuracy within " + maxSteps + " steps for "
                  + a + " and " + b);
         }
+        if (!res.isEmpty()) {
+            removeSharedEndpoints(res, a, b, maxError);
+        }
         return res;
     }
 
+    /** Remove from is every point within maxError of an endpoint
+        that a and b share. Curves that join end to end, such as
+        consecutive segments of a spline, touch at the shared endpoint
+        without crossing, so the overlap diameter there is zero, and
+        intersections() need not report it. Bezier clipping usually
+        does report such points and subdivision usually does not, so
+        removing them makes the result the same either way. */
+    static void removeSharedEndpoints(ArrayList<Point2D.Double> is,
+            BoundedParam2D a, BoundedParam2D b, double maxError) {
+        for (Point2D.Double ae: new Point2D.Double[] { a.getStart(), a.getEnd() }) {
+            for (Point2D.Double be: new Point2D.Double[] { b.getStart(), b.getEnd() }) {
+                if (ae.distance(be) <= maxError) {
+                    is.removeIf(p -> p.distance(ae) <= maxError);
+                }
+            }
+        }
+    }
+
     /** Like {@link #intersections(BoundedParam2D, BoundedParam2D,
         double, int)}, but appends the list of intersections to the
         given ArrayList and returns the number of steps actually
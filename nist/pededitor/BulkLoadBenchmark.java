@@ -0,0 +1,75 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/** Compare loading PED files one at a time with Diagram.loadFrom()
+    against loading them with BulkLoader, and check that both produce
+    the same diagrams in the same order. */
+public class BulkLoadBenchmark {
+    static class Result {
+        long nanos = 0;
+        /** The diagrams, with null for any that failed to load. */
+        Diagram[] diagrams;
+    }
+
+    static String toJsonString(Diagram d) throws IOException {
+        return (d == null) ? null : d.toJsonString();
+    }
+
+    /** @param bulk If true, use BulkLoader, or if false, load the
+        files one at a time. */
+    static Result run(List<String> filenames, boolean bulk) {
+        Result res = new Result();
+        Diagram[] diagrams = res.diagrams = new Diagram[filenames.size()];
+        long t0 = System.nanoTime();
+        if (bulk) {
+            try (BulkLoader loader = new BulkLoader(filenames)) {
+                for (int i = 0; loader.hasNext(); ++i) {
+                    BulkLoader.Result r = loader.next();
+                    Benchmark.check(r.filename.equals(filenames.get(i)),
+                            "bulk result #%d is %s, expected %s", i, r.filename,
+                            filenames.get(i));
+                    diagrams[i] = r.diagram;
+                }
+            }
+        } else {
+            for (int i = 0; i < diagrams.length; ++i) {
+                try {
+                    diagrams[i] = Diagram.loadFrom(new File(filenames.get(i)));
+                } catch (IOException x) {
+                    diagrams[i] = null;
+                }
+            }
+        }
+        res.nanos = System.nanoTime() - t0;
+        return res;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Benchmark.checkUsage(args, BulkLoadBenchmark.class,
+                "Compare loading the files one at a time against bulk loading.");
+        List<String> filenames = Arrays.asList(args);
+        List<Result> res = Benchmark.secondPass
+            (2, m -> run(filenames, m == 1));
+        Result one = res.get(0);
+        Result bulk = res.get(1);
+
+        for (int i = 0; i < args.length; ++i) {
+            Benchmark.check(Objects.equals(toJsonString(one.diagrams[i]),
+                            toJsonString(bulk.diagrams[i])),
+                    "%s: bulk load differs from loading it alone", args[i]);
+        }
+        System.out.println(String.format(
+                        "%d files, %d threads: one at a time %.1f ms, bulk %.1f ms",
+                        args.length, Runtime.getRuntime().availableProcessors(),
+                        Benchmark.millis(one.nanos), Benchmark.millis(bulk.nanos)));
+        Benchmark.finish();
+    }
+}
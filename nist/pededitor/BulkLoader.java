@@ -0,0 +1,160 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/** Load a list of PED files concurrently, returning the diagrams in
+    list order. Each file is memory-mapped and parsed on one of a
+    fixed number of threads. At most a fixed number of files are
+    loaded ahead of the consumer, so memory use does not grow with
+    the length of the list when the consumer is slower than the
+    loaders.
+
+    Mapped files stay mapped until the mapping is garbage collected,
+    and on Windows, a mapped file cannot be overwritten, so do not
+    save diagrams over the files they were bulk loaded from. */
+public class BulkLoader implements Iterator<BulkLoader.Result>, AutoCloseable {
+    /** A loaded diagram, or the reason it could not be loaded. */
+    public static class Result {
+        public final String filename;
+        final Diagram diagram;
+        final IOException error;
+
+        Result(String filename, Diagram diagram, IOException error) {
+            this.filename = filename;
+            this.diagram = diagram;
+            this.error = error;
+        }
+
+        /** @return the diagram.
+            @throws IOException if it could not be loaded. */
+        public Diagram get() throws IOException {
+            if (error != null) {
+                throw error;
+            }
+            return diagram;
+        }
+    }
+
+    protected final List<String> filenames;
+    protected final ExecutorService pool;
+    /** Maximum number of loads that may be pending or finished but
+        not yet returned by next(). */
+    protected final int window;
+    protected final ArrayDeque<Future<Result>> pending = new ArrayDeque<>();
+    /** Index in filenames of the next file to submit. */
+    protected int submitted = 0;
+
+    /** Load filenames using one thread per processor. */
+    public BulkLoader(List<String> filenames) {
+        this(filenames, Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Load filenames using the given number of threads, with up to
+        twice that many loads ahead of the consumer. */
+    public BulkLoader(List<String> filenames, int threadCnt) {
+        this(filenames, threadCnt, 2 * threadCnt);
+    }
+
+    public BulkLoader(List<String> filenames, int threadCnt, int window) {
+        if (threadCnt < 1 || window < 1) {
+            throw new IllegalArgumentException
+                ("Invalid thread count " + threadCnt + " or window " + window);
+        }
+        this.filenames = filenames;
+        this.window = window;
+        pool = Executors.newFixedThreadPool(threadCnt, r -> {
+                Thread t = new Thread(r, "BulkLoader");
+                t.setDaemon(true);
+                return t;
+            });
+        fill();
+    }
+
+    /** @return the diagrams in filenames, in order, as a sequential
+        stream. Closing the stream stops the loader threads. */
+    public static Stream<Result> stream(List<String> filenames) {
+        return new BulkLoader(filenames).stream();
+    }
+
+    public Stream<Result> stream() {
+        return StreamSupport.stream
+            (Spliterators.spliterator
+             (this, filenames.size(), Spliterator.ORDERED | Spliterator.NONNULL),
+             false).onClose(this::close);
+    }
+
+    /** Submit loads until window loads are outstanding. */
+    protected void fill() {
+        while (pending.size() < window && submitted < filenames.size()) {
+            String filename = filenames.get(submitted++);
+            pending.add(pool.submit(() -> load(filename)));
+        }
+    }
+
+    @Override public boolean hasNext() {
+        return !pending.isEmpty();
+    }
+
+    /** @return the next diagram, waiting for it to finish loading if
+        necessary. */
+    @Override public Result next() {
+        Future<Result> f = pending.poll();
+        if (f == null) {
+            throw new NoSuchElementException();
+        }
+        fill();
+        try {
+            return f.get();
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(x);
+        } catch (ExecutionException x) {
+            throw new IllegalStateException(x.getCause());
+        }
+    }
+
+    /** Stop loading. Loads that are in progress still finish. */
+    @Override public void close() {
+        pool.shutdownNow();
+        pending.clear();
+    }
+
+    static Result load(String filename) {
+        try {
+            return new Result(filename, load(Paths.get(filename)), null);
+        } catch (IOException x) {
+            return new Result(filename, null, x);
+        }
+    }
+
+    /** Memory-map file and load it. */
+    static Diagram load(Path file) throws IOException {
+        MappedByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(file)) {
+            if (ch.size() > Integer.MAX_VALUE) {
+                return Diagram.loadFrom(file.toFile());
+            }
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        return Diagram.loadFrom(file, buf);
+    }
+}
@@ -17,9 +17,67 @@ public class CubicParam2D extends BezierParam2D {
         super(points);
     }
 
-    /** Distances from points to cubic Bezier curves cannot be solved
-        analytically. */
+    /** If true, distance(p, t0, t1) finds the nearest point directly
+        by solving a quintic polynomial. Otherwise, it returns an
+        estimate and a lower bound, which BoundedParam2Ds.distance()
+        refines by bisection. */
+    public static boolean useRootFinder = true;
+
     @Override public CurveDistanceRange distance
+        (Point2D p, double t0, double t1) {
+        return useRootFinder ? exactDistance(p, t0, t1)
+            : estimateDistance(p, t0, t1);
+    }
+
+    /** @return the exact distance from p to this curve for t in [t0,
+        t1].
+
+        The nearest point is either an endpoint or a point where the
+        curve's velocity is perpendicular to the vector from p to the
+        curve, that is, where (B(t) - p) . B'(t) = 0. That is a
+        polynomial of degree 5, which Polynomial.solve() can solve. */
+    public CurveDistanceRange exactDistance(Point2D p, double t0, double t1) {
+        double[] xs = xCoefficients;
+        double[] ys = yCoefficients;
+        double px = p.getX();
+        double py = p.getY();
+        double[] f = new double[6];
+        for (int i = 0; i < 4; ++i) {
+            double x = (i == 0) ? xs[0] - px : xs[i];
+            double y = (i == 0) ? ys[0] - py : ys[i];
+            for (int j = 0; j < 3; ++j) {
+                f[i + j] += (j + 1) * (x * xs[j + 1] + y * ys[j + 1]);
+            }
+        }
+
+        // Evaluate the endpoints and the roots in one batch.
+        double[] roots = Polynomial.solve(f, t0, t1);
+        int cnt = roots.length + 2;
+        double[] ts = new double[cnt];
+        ts[0] = t0;
+        ts[1] = t1;
+        System.arraycopy(roots, 0, ts, 2, roots.length);
+        double[] cxs = new double[cnt];
+        double[] cys = new double[cnt];
+        getLocations(ts, cxs, cys);
+
+        double bestT = t0;
+        double bestD2 = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < cnt; ++i) {
+            double dx = cxs[i] - px;
+            double dy = cys[i] - py;
+            double d2 = dx * dx + dy * dy;
+            if (d2 < bestD2) {
+                bestT = ts[i];
+                bestD2 = d2;
+            }
+        }
+        return new CurveDistanceRange(distance(p, bestT));
+    }
+
+    /** Return an estimate of the distance from p to this curve for t
+        in [t0, t1], and a lower bound on that distance. */
+    public CurveDistanceRange estimateDistance
         (Point2D p, double t0, double t1) {
         double mid = (t0 + t1) / 2;
         /* Choose a candidate t value using the quadratic
@@ -0,0 +1,142 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+import java.util.Random;
+
+/** Check CubicParam2D.exactDistance() against estimating the
+    distance and refining it by bisection, and check Polynomial.solve()
+    on the cases that exactDistance() depends on. Exits with status 1
+    if any check fails. */
+public class CubicParam2DTest {
+    static final double MAX_ERROR = 1e-9;
+    static final int MAX_STEPS = 2000;
+    static int failures = 0;
+
+    static void check(boolean ok, String format, Object... args) {
+        if (!ok) {
+            ++failures;
+            System.err.println("FAILED: " + String.format(format, args));
+        }
+    }
+
+    /** @return poly with its roots and ones at the given x values. */
+    static double[] fromRoots(double... roots) {
+        double[] res = { 1 };
+        for (double r: roots) {
+            res = Polynomial.times(res, new double[] { -r, 1 });
+        }
+        return res;
+    }
+
+    /** Check that solve(poly, lo, hi) returns expected, in order, to
+        within tolerance. */
+    static void checkSolve(String name, double[] poly, double lo, double hi,
+            double tolerance, double... expected) {
+        double[] roots = Polynomial.solve(poly, lo, hi);
+        boolean ok = roots.length == expected.length;
+        for (int i = 0; ok && i < roots.length; ++i) {
+            ok = Math.abs(roots[i] - expected[i]) <= tolerance;
+        }
+        check(ok, "%s: solve() returned %s, expected %s", name,
+                Arrays.toString(roots), Arrays.toString(expected));
+    }
+
+    static void testSolve() {
+        // Double roots are only determined to within about the square
+        // root of the machine epsilon.
+        checkSolve("double roots", fromRoots(1, 1, -2, 3, 3), -5, 5, 1e-7,
+                -2, 1, 3);
+        checkSolve("triple root", fromRoots(0.5, 0.5, 0.5, -1, 2), -5, 5, 1e-4,
+                -1, 0.5, 2);
+        checkSolve("roots at both ends", fromRoots(0, 1, 2, 3, 4), 0, 4, 1e-12,
+                0, 1, 2, 3, 4);
+        checkSolve("roots at both ends of a subrange",
+                fromRoots(0, 1, 2, 3, 4), 1, 3, 1e-12, 1, 2, 3);
+        checkSolve("double root at an end", fromRoots(1, 1, -2, 3, 4), 1, 2,
+                1e-7, 1);
+        checkSolve("no roots in range", fromRoots(-3, -2, -1, 5, 6), 0, 4, 0);
+
+        double[] padded = Arrays.copyOf(fromRoots(1, 2, 3), 6);
+        checkSolve("zero leading coefficients", padded, 0, 5, 1e-12, 1, 2, 3);
+        double[] roots = Polynomial.solve(padded);
+        check(Arrays.equals(roots, Polynomial.solve(fromRoots(1, 2, 3))),
+                "zero leading coefficients: solve() returned %s",
+                Arrays.toString(roots));
+        checkSolve("constant", new double[] { 1, 0, 0 }, -1, 1, 0);
+    }
+
+    static Point2D.Double randomPoint(Random r) {
+        return new Point2D.Double(r.nextDouble() * 10, r.nextDouble() * 10);
+    }
+
+    /** Check that c.exactDistance(p, 0, 1) is no farther than the
+        bisection result by more than MAX_ERROR. */
+    static void checkDistance(String name, CubicParam2D c, Point2D p) {
+        double exact = c.exactDistance(p, 0, 1).distance;
+        boolean old = CubicParam2D.useRootFinder;
+        CubicParam2D.useRootFinder = false;
+        double bisected;
+        try {
+            bisected = BoundedParam2Ds.distance(c, p, MAX_ERROR, MAX_STEPS)
+                .distance;
+        } finally {
+            CubicParam2D.useRootFinder = old;
+        }
+        check(exact <= bisected + MAX_ERROR,
+                "%s: exact distance from %s to %s is %g, but bisection found %g",
+                name, Geom.toString(p), c, exact, bisected);
+    }
+
+    static void testDistance() {
+        Random r = new Random(1);
+        for (int i = 0; i < 2000; ++i) {
+            CubicParam2D c = new CubicParam2D(randomPoint(r), randomPoint(r),
+                    randomPoint(r), randomPoint(r));
+            checkDistance("random #" + i, c, randomPoint(r));
+            checkDistance("random #" + i + " vertex", c, c.getLocation(0));
+            checkDistance("random #" + i + " on curve", c,
+                    c.getLocation(r.nextDouble()));
+        }
+
+        Point2D.Double a = new Point2D.Double(0, 0);
+        Point2D.Double b = new Point2D.Double(1, 2);
+        Point2D.Double c = new Point2D.Double(3, -1);
+        Point2D.Double d = new Point2D.Double(4, 4);
+        CubicParam2D[] special = {
+            // Repeated control points.
+            new CubicParam2D(a, a, c, d),
+            new CubicParam2D(a, b, d, d),
+            // Collinear control points, including one that doubles back.
+            new CubicParam2D(a, new Point2D.Double(1, 1),
+                    new Point2D.Double(3, 3), d),
+            new CubicParam2D(a, new Point2D.Double(6, 6),
+                    new Point2D.Double(-2, -2), d),
+            // A cusp.
+            new CubicParam2D(a, c, b, new Point2D.Double(3, 0)),
+            // A single point.
+            new CubicParam2D(b, b, b, b),
+        };
+        Point2D.Double[] points = { a, b, c, d, new Point2D.Double(2, 2),
+                                    new Point2D.Double(1.5, 0.5),
+                                    new Point2D.Double(-3, 7) };
+        for (int i = 0; i < special.length; ++i) {
+            for (Point2D.Double p: points) {
+                checkDistance("special #" + i, special[i], p);
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        testSolve();
+        testDistance();
+        if (failures > 0) {
+            System.err.println(failures + " check(s) failed.");
+            System.exit(1);
+        }
+        System.out.println("All checks passed.");
+    }
+}
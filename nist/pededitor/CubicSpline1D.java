@@ -18,14 +18,27 @@ import java.util.*;
  */
 final public class CubicSpline1D {
 
-    /** coefficients[n][d] represents the d-th degree coefficient of
-        the cubic polynomial over the segment of the spline that
+    /** coefficients[4*n + d] represents the d-th degree coefficient
+        of the cubic polynomial over the segment of the spline that
         connects ys[n] to ys[n+1]. */
 
-    double[][] coefficients = new double[0][4];
+    double[] coefficients = new double[0];
     double[] ys;
     double[] xs;
 
+    /** Second derivatives d2y/dx2 at each vertex, or null if this is
+        not a natural spline (see copyOfRange()). */
+    double[] d2s = null;
+
+    /** Scratch buffers for setVertex(), reused between calls. */
+    double[] bandD2s = new double[0];
+    double[] bandCs = new double[0];
+
+    /** setVertex() solves for the second derivatives within this many
+        vertexes of the changed one first, and widens the band if that
+        is not enough. */
+    static final int MIN_BAND_RADIUS = 8;
+
     /** @return a new CubicSpline1D object containing only the portion
         that includes cnt vertexes starting with vertex #start. The
         existing polynomials over that subset are kept, meaning that
@@ -34,18 +47,25 @@ final public class CubicSpline1D {
         its endpoints). */
     public CubicSpline1D copyOfRange(int start, int cnt) {
         CubicSpline1D output = new CubicSpline1D();
-        output.coefficients = new double[cnt - 1][4];
-        for (int i = 0; i < cnt - 1; ++i) {
-            for (int j = 0; j < 4; ++j) {
-                output.coefficients[i][j] = coefficients[start+i][j];
-            }
-        }
+        output.coefficients = Arrays.copyOfRange
+            (coefficients, 4 * start, 4 * (start + cnt - 1));
 
         output.xs = Arrays.copyOfRange(xs, start, start + cnt);
         output.ys = Arrays.copyOfRange(ys, start, start + cnt);
         return output;
     }
 
+    /** @return a copy of this spline that shares no mutable state
+        with it. */
+    public CubicSpline1D copy() {
+        CubicSpline1D output = new CubicSpline1D();
+        output.coefficients = coefficients.clone();
+        output.xs = xs.clone();
+        output.ys = ys.clone();
+        output.d2s = (d2s == null) ? null : d2s.clone();
+        return output;
+    }
+
     /** Return an array of the second derivative values d2y/dx2 at
         each of the data points. This function is derived from the one
         called "sety2" in Numerical Recipes.
@@ -101,18 +121,24 @@ final public class CubicSpline1D {
         this.ys = Arrays.copyOf(ys, cnt);
 
         if (cnt < 2) {
+            d2s = new double[cnt];
             return;
         }
 
-        double[] d2s = computeSecondDerivatives(xs, ys);
-        coefficients = new double[cnt-1][4];
-        for (int i = 0; i < cnt - 1; ++i) {
+        d2s = computeSecondDerivatives(xs, ys);
+        coefficients = new double[4 * (cnt - 1)];
+        computeCoefficients(0, cnt - 1);
+    }
+
+    /** Compute the coefficients of segments [start, end) from xs, ys,
+        and d2s. */
+    void computeCoefficients(int start, int end) {
+        for (int i = start; i < end; ++i) {
             double deltax = xs[i+1] - xs[i];
             double deltay = ys[i+1] - ys[i];
+            int o = 4 * i;
 
-            double[] coefs = coefficients[i];
-
-            coefs[0] = ys[i];
+            coefficients[o] = ys[i];
 
             // Evaluating Numerical Recipes' equation 3.3.5 at x =
             // x[i] yields
@@ -131,17 +157,124 @@ final public class CubicSpline1D {
             // dydt = dydx * deltax
             double dydt = deltay - deltax * deltax * (d2s[i] / 3.0 + d2s[i+1] / 6.0);
             // dydt(0) = coefs[1]
-            coefs[1] = dydt;
+            coefficients[o + 1] = dydt;
 
             double dy2dx2 = d2s[i];
             double dy2dt2 = dy2dx2 * deltax * deltax;
             // dy2dt2(0) = 2 coefs[2]
-            coefs[2] = dy2dt2 / 2;
+            coefficients[o + 2] = dy2dt2 / 2;
 
             // dy3dx3 = (d2s[i+1] - d2s[i]) / deltax;
             // dy3dt3 = dy3dx3 * deltax * deltax * deltax
             double dy3dt3 = (d2s[i+1] - d2s[i]) * deltax * deltax;
-            coefs[3] = dy3dt3 / 6.0;
+            coefficients[o + 3] = dy3dt3 / 6.0;
+        }
+    }
+
+    /** Change vertex #i to (x, y), and add shift to the x values of
+        all vertexes after #i, updating the spline in place. This only
+        works for natural splines created by the public constructor.
+
+        Changing one vertex of a natural spline changes the second
+        derivatives at every vertex, but the changes shrink by a
+        factor of about 3.7 with every vertex further away. This
+        solves for the second derivatives only within a band around
+        vertex #i, holding the ones outside the band fixed, and widens
+        the band until the second derivative changes at its edges
+        change the curve by no more than about tolerance. Use
+        tolerance = 0 to get the same result as rebuilding the spline
+        from scratch.
+
+        @throws IllegalStateException if this is not a natural spline.
+
+        @throws IllegalArgumentException if the new x values would
+        not be increasing. */
+    public void setVertex(int i, double x, double y, double shift,
+                          double tolerance) {
+        if (d2s == null) {
+            throw new IllegalStateException("Not a natural spline");
+        }
+        int n = xs.length;
+        if ((i > 0 && x <= xs[i-1]) || (i < n-1 && xs[i+1] + shift <= x)) {
+            throw new IllegalArgumentException
+                ("x values must be increasing");
+        }
+        xs[i] = x;
+        ys[i] = y;
+        if (shift != 0) {
+            for (int j = i + 1; j < n; ++j) {
+                xs[j] += shift;
+            }
+        }
+        if (n < 3) {
+            computeCoefficients(0, n - 1);
+            return;
+        }
+
+        // Only the equations for the interior vertexes #i-1, #i, and
+        // #i+1 involve the changed values.
+        int lo = Math.max(1, i - 1);
+        int hi = Math.min(n - 2, i + 1);
+        if (bandD2s.length < n) {
+            bandD2s = new double[n];
+            bandCs = new double[n];
+        }
+        for (int radius = MIN_BAND_RADIUS; ; radius *= 2) {
+            int a = Math.max(1, lo - radius);
+            int b = Math.min(n - 2, hi + radius);
+            solveBand(a, b);
+            boolean done = (a == 1
+                            || withinTolerance(a, bandD2s[a] - d2s[a], tolerance))
+                && (b == n - 2
+                    || withinTolerance(b, bandD2s[b] - d2s[b], tolerance));
+            if (done) {
+                System.arraycopy(bandD2s, a, d2s, a, b - a + 1);
+                computeCoefficients(a - 1, b + 1);
+                return;
+            }
+        }
+    }
+
+    /** @return true if changing the second derivative at vertex #i by
+        delta changes the adjacent segments by at most about
+        tolerance. */
+    boolean withinTolerance(int i, double delta, double tolerance) {
+        double h = Math.max(xs[i] - xs[i-1], xs[i+1] - xs[i]);
+        return Math.abs(delta) * h * h <= tolerance;
+    }
+
+    /** Solve the tridiagonal system for the second derivatives at
+        vertexes [a, b], treating the second derivatives at vertexes
+        a-1 and b+1 as fixed, and store the result in bandD2s[a, b]. */
+    void solveBand(int a, int b) {
+        // Row j of the system is
+        //   h[j-1] M[j-1] + 2 (h[j-1] + h[j]) M[j] + h[j] M[j+1] = r[j]
+        // where h[j] = xs[j+1] - xs[j] and r[j] = 6 (slope[j] - slope[j-1]).
+        // Solve it by the Thomas algorithm.
+        double prevD = 0;
+        double prevC = 0;
+        for (int j = a; j <= b; ++j) {
+            double h0 = xs[j] - xs[j-1];
+            double h1 = xs[j+1] - xs[j];
+            double r = 6 * ((ys[j+1] - ys[j]) / h1 - (ys[j] - ys[j-1]) / h0);
+            if (j == a) {
+                r -= h0 * d2s[a-1];
+            }
+            if (j == b) {
+                r -= h1 * d2s[b+1];
+            }
+            double diag = 2 * (h0 + h1);
+            if (j > a) {
+                diag -= h0 * prevC;
+                r -= h0 * prevD;
+            }
+            prevC = h1 / diag;
+            prevD = r / diag;
+            bandCs[j] = prevC;
+            bandD2s[j] = prevD;
+        }
+        for (int j = b - 1; j >= a; --j) {
+            bandD2s[j] -= bandCs[j] * bandD2s[j+1];
         }
     }
 
@@ -150,8 +283,9 @@ final public class CubicSpline1D {
     }
 
     public double value(int segment, double t) {
-        double[] poly = coefficients[segment];
-        return poly[0] + t * (poly[1] + t * (poly[2] + t * poly[3]));
+        int o = 4 * segment;
+        return coefficients[o] + t * (coefficients[o + 1]
+                + t * (coefficients[o + 2] + t * coefficients[o + 3]));
     }
 
     /** @return the number of segments in this spline, which equals
@@ -163,9 +297,20 @@ final public class CubicSpline1D {
     /* Parameterize the entire curve as t in [0,1] and return the
        value of the curve at the given t value */
     public double value(double t) {
-        int cnt = coefficients.length;
+        return evaluate(t);
+    }
+
+    /* Return (dx/dt) at t. */
+    public double derivative(double t) {
+        return evaluateDerivative(t);
+    }
+
+    /** Parameterize the entire curve as t in [0,1] and return the
+        value of the curve at the given t value. */
+    public double evaluate(double t) {
+        int cnt = segmentCnt();
 
-        if (t < 0 || cnt == 0) {
+        if (t < 0 || cnt <= 0) {
             return ys[0];
         }
 
@@ -174,46 +319,98 @@ final public class CubicSpline1D {
         }
 
         t *= cnt;
-        double segment = Math.floor(t);
-
-        return value((int) segment, t - segment);
+        int segment = (int) t;
+        return value(segment, t - segment);
     }
 
-    /* Return (dx/dt) at t. */
-    public double derivative(double t) {
-        int cnt = coefficients.length;
+    /** Return dy/dt at t, where the entire curve is parameterized as
+        t in [0,1]. */
+    public double evaluateDerivative(double t) {
+        int cnt = segmentCnt();
 
-        if (cnt == 0) {
+        if (cnt <= 0) {
             return Double.NaN;
         }
 
-        if (t < 0) {
-            return derivative(0);
+        if (t <= 0) {
+            return slope(0, 0.0);
+        }
+
+        if (t >= 1) {
+            // Return the slope at the last point in the curve.
+            return slope(cnt - 1, 1.0);
         }
 
         t *= cnt;
-        double segment = Math.floor(t);
+        int segment = (int) t;
+        return slope(segment, t - segment);
+    }
 
-        if (t >= cnt) {
-            // Return the slope at the last point in the curve.
-            double[] last = coefficients[cnt - 1];
-            return last[3] * 3 + last[2] * 2 + last[1];
+    /** Set out[i] = evaluate(ts[i]) for every i. */
+    public void evaluate(double[] ts, double[] out) {
+        int cnt = segmentCnt();
+        for (int i = 0; i < ts.length; ++i) {
+            double t = ts[i];
+            if (t < 0 || cnt <= 0) {
+                out[i] = ys[0];
+            } else if (t >= 1) {
+                out[i] = ys[cnt];
+            } else {
+                t *= cnt;
+                int segment = (int) t;
+                out[i] = value(segment, t - segment);
+            }
         }
+    }
+
+    /** Set out[i] = value(segment, ts[i]) for every i. */
+    public void value(int segment, double[] ts, double[] out) {
+        int o = 4 * segment;
+        double c0 = coefficients[o];
+        double c1 = coefficients[o + 1];
+        double c2 = coefficients[o + 2];
+        double c3 = coefficients[o + 3];
+        for (int i = 0; i < ts.length; ++i) {
+            double t = ts[i];
+            out[i] = c0 + t * (c1 + t * (c2 + t * c3));
+        }
+    }
 
-        return slope((int) segment, t - segment);
+    /** Set out[i] = evaluateDerivative(ts[i]) for every i. */
+    public void evaluateDerivative(double[] ts, double[] out) {
+        for (int i = 0; i < ts.length; ++i) {
+            out[i] = evaluateDerivative(ts[i]);
+        }
+    }
+
+    /** @return the number of the segment that contains t, where the
+        entire curve is parameterized as t in [0,1]. This is the same
+        as getSegment(t).segment, but without the allocation. */
+    int segmentIndex(double t) {
+        int cnt = segmentCnt();
+        return (t >= 1) ? cnt - 1 : (int) Math.floor(t * cnt);
+    }
+
+    /** @return the t value within segment #segment that corresponds
+        to t, where the entire curve is parameterized as t in [0,1].
+        This is the same as getSegment(t).t if segment equals
+        segmentIndex(t). */
+    double segmentT(int segment, double t) {
+        return (t >= 1) ? 1.0 : t * segmentCnt() - segment;
     }
 
     public double slope(int segment, double t) {
-        double[] poly = coefficients[segment];
-        return poly[1] + t * (2 * poly[2] + t * 3 * poly[3]);
+        int o = 4 * segment;
+        return coefficients[o + 1] + t * (2 * coefficients[o + 2]
+                + t * 3 * coefficients[o + 3]);
     }
 
     /* Parameterize the entire curve as t in [0,1] and return the
        SegmentAndT corresponding to the given t value */
     public SegmentAndT getSegment(double t) {
-        int cnt = coefficients.length;
+        int cnt = segmentCnt();
 
-        if (cnt == 0) {
+        if (cnt <= 0) {
             throw new IllegalArgumentException("No spline segments exist");
         }
 
@@ -239,9 +436,10 @@ final public class CubicSpline1D {
        instead twice the one-way distance) in the given segment
        for t in [t0, t1]. */
     public double segmentLength(int segment, double t0, double t1) {
-        double[] poly = coefficients[segment];
+        int o = 4 * segment;
         double[] zeroes = quadraticFormula
-            (poly[3] * 3, poly[2] * 2, poly[1]);
+            (coefficients[o + 3] * 3, coefficients[o + 2] * 2,
+             coefficients[o + 1]);
 
         int zmin = 0;
         while (zmin < zeroes.length && zeroes[zmin] <= t0) {
@@ -282,8 +480,9 @@ final public class CubicSpline1D {
     /** Return the set of 4 cubic Bezier control points that map y(t)
         for the given segment. */
     public void bezier(int segment, double[] controlPoints) {
-        double[] coefs = coefficients[segment];
-        cubicToBezier(coefs[0], coefs[1], coefs[2], coefs[3], controlPoints);
+        int o = 4 * segment;
+        cubicToBezier(coefficients[o], coefficients[o + 1],
+                      coefficients[o + 2], coefficients[o + 3], controlPoints);
         // Insure that the second endpoint has zero error.
         controlPoints[3] = ys[segment + 1];
     }
@@ -324,7 +523,7 @@ final public class CubicSpline1D {
         double[] coefs = new double[4];
         bezierToCubic(p0, p1, p2, p3, coefs);
         CubicSpline1D output = new CubicSpline1D();
-        output.coefficients = new double[][] { coefs };
+        output.coefficients = coefs;
         output.xs = new double[] { 0, 1 };
         output.ys = new double[] { p0, p3 };
         return output;
@@ -348,7 +547,7 @@ final public class CubicSpline1D {
         StringBuilder out = new StringBuilder(super.toString() + "\n"); 
         for (int segment = 0; segment < segmentCnt(); ++segment) {
             out.append(segment + ": ");
-            out.append(Polynomial.toString(coefficients[segment]));
+            out.append(Polynomial.toString(getPoly(segment)));
             out.append("\n");
         }
         for (int i = 0; i < ys.length; ++i) {
@@ -397,7 +596,7 @@ final public class CubicSpline1D {
 
     /** Return the polynomial x(t) that covers the given segment. */
     public double[] getPoly(int segment) {
-        return (double[]) coefficients[segment].clone();
+        return Arrays.copyOfRange(coefficients, 4 * segment, 4 * segment + 4);
     }
 
 
@@ -405,21 +604,57 @@ final public class CubicSpline1D {
         values of spline(t) for t in [t0, t1] within the given
         segment. */
     public double[] getBounds(int segment, double t0, double t1) {
-        double[] poly = coefficients[segment];
-        double[] extrema = quadraticFormula
-            (poly[3] * 3, poly[2] * 2, poly[1]);
-
-        double max = Math.max(value(segment, t0), value(segment, t1));
-        double min = Math.min(value(segment, t0), value(segment, t1));
-        for (double t : extrema) {
-            if (t <= t0 || t >= t1) {
-                continue;
+        double[] res = { Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+        expandBounds(segment, t0, t1, res);
+        return res;
+    }
+
+    /** Expand the range {min, max} to include the values of
+        spline(t) for t in [t0, t1] within the given segment. Unlike
+        getBounds(), this does not allocate anything. */
+    void expandBounds(int segment, double t0, double t1, double[] range) {
+        includeValue(segment, t0, range);
+        includeValue(segment, t1, range);
+
+        // Include the zeroes of the derivative a t^2 + b t + c,
+        // computed as in quadraticFormula().
+        int o = 4 * segment;
+        double a = coefficients[o + 3] * 3;
+        double b = coefficients[o + 2] * 2;
+        double c = coefficients[o + 1];
+        if (a == 0) {
+            if (b != 0) {
+                includeExtremum(segment, -c / b, t0, t1, range);
             }
-            max = Math.max(max, value(segment, t));
-            min = Math.min(min, value(segment, t));
+            return;
         }
+        double discriminant = b * b - 4 * a * c;
+        if (discriminant < 0) {
+            return;
+        }
+        double x1 = (b < 0) ? ((-b + Math.sqrt(discriminant)) / (2 * a))
+            : ((-b - Math.sqrt(discriminant)) / (2 * a));
+        includeExtremum(segment, x1, t0, t1, range);
+        if (x1 != 0) {
+            includeExtremum(segment, c / a / x1, t0, t1, range);
+        }
+    }
 
-        return new double[] { min, max };
+    void includeExtremum(int segment, double t, double t0, double t1,
+                         double[] range) {
+        if (t > t0 && t < t1) {
+            includeValue(segment, t, range);
+        }
+    }
+
+    void includeValue(int segment, double t, double[] range) {
+        double v = value(segment, t);
+        if (v < range[0]) {
+            range[0] = v;
+        }
+        if (v > range[1]) {
+            range[1] = v;
+        }
     }
 
 
@@ -432,20 +667,11 @@ final public class CubicSpline1D {
             return null;
         }
 
-        double min = ys[0];
-        double max = ys[0];
-
+        double[] res = { ys[0], ys[0] };
         for (int segNo = 0; segNo < cnt; ++segNo) {
-            double[] segRange = getBounds(segNo, 0.0, 1.0);
-            if (segRange[0] < min) {
-                min = segRange[0];
-            }
-            if (segRange[1] > max) {
-                max = segRange[0];
-            }
+            expandBounds(segNo, 0.0, 1.0, res);
         }
-
-        return new double[] { min, max };
+        return res;
     }
 
     /** Dumb helper function to return p(x) where coefficients[i] is
@@ -471,28 +697,22 @@ final public class CubicSpline1D {
             return new double[] { ys[0], ys[0] };
         }
 
-        SegmentAndT s0 = getSegment(t0);
-        SegmentAndT s1 = getSegment(t1);
+        int seg0 = segmentIndex(t0);
+        int seg1 = segmentIndex(t1);
+        double u0 = segmentT(seg0, t0);
+        double u1 = segmentT(seg1, t1);
+        double[] r = { Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
 
-        if (s0.segment == s1.segment) {
-            return getBounds(s0.segment, s0.t, s1.t);
+        if (seg0 == seg1) {
+            expandBounds(seg0, u0, u1, r);
         } else {
-            double[] r = getBounds(s0.segment, s0.t, 1.0);
-            double[] r2;
-            int s;
-
-            for (s = s0.segment + 1; s < s1.segment; ++s) {
-                r2 = getBounds(s, 0.0, 1.0);
-                r[0] = Math.min(r[0], r2[0]);
-                r[1] = Math.max(r[1], r2[1]);
+            expandBounds(seg0, u0, 1.0, r);
+            for (int s = seg0 + 1; s < seg1; ++s) {
+                expandBounds(s, 0.0, 1.0, r);
             }
-
-            r2 = getBounds(s1.segment, 0.0, s1.t);
-            r[0] = Math.min(r[0], r2[0]);
-            r[1] = Math.max(r[1], r2[1]);
-
-            return r;
+            expandBounds(seg1, 0.0, u1, r);
         }
+        return r;
     }
 
     
@@ -507,7 +727,7 @@ final public class CubicSpline1D {
        values of dspline(t)/dt for t in [t0, t1] within the given
        segment. */
     public double[] derivativeRange(int segment, double t0, double t1) {
-        double[] poly = coefficients[segment];
+        double[] poly = getPoly(segment);
 
         double[] deriv = new double[] { poly[1], poly[2] * 2, poly[3] * 3 };
 
@@ -545,23 +765,25 @@ final public class CubicSpline1D {
             return new double[] { 0, 0 };
         }
 
-        SegmentAndT s0 = getSegment(t0);
-        SegmentAndT s1 = getSegment(t1);
+        int seg0 = segmentIndex(t0);
+        int seg1 = segmentIndex(t1);
+        double u0 = segmentT(seg0, t0);
+        double u1 = segmentT(seg1, t1);
 
-        if (s0.segment == s1.segment) {
-            return derivativeRange(s0.segment, s0.t, s1.t);
+        if (seg0 == seg1) {
+            return derivativeRange(seg0, u0, u1);
         } else {
-            double[] r = derivativeRange(s0.segment, s0.t, 1.0);
+            double[] r = derivativeRange(seg0, u0, 1.0);
             double[] r2;
             int s;
 
-            for (s = s0.segment + 1; s < s1.segment; ++s) {
+            for (s = seg0 + 1; s < seg1; ++s) {
                 r2 = derivativeRange(s, 0.0, 1.0);
                 r[0] = Math.min(r[0], r2[0]);
                 r[1] = Math.max(r[1], r2[1]);
             }
 
-            r2 = derivativeRange(s1.segment, 0.0, s1.t);
+            r2 = derivativeRange(seg1, 0.0, u1);
             r[0] = Math.min(r[0], r2[0]);
             r[1] = Math.max(r[1], r2[1]);
 
@@ -582,7 +804,7 @@ final public class CubicSpline1D {
         for (int i = 0; i < c.segmentCnt(); ++i) {
             for (double j = 0; j < 1.01; j += 0.25) {
                 System.out.println("value(" + i + ", " + j + ") = "
-                                   + Arrays.toString(Polynomial.taylor(j, c.coefficients[i])));
+                                   + Arrays.toString(Polynomial.taylor(j, c.getPoly(i))));
             }
         }
 
@@ -38,6 +38,17 @@ final public class CubicSpline2D implements BoundedParameterizable2D {
         return output;
     }
 
+    /** @return a copy of this spline that setVertex() calls on
+        either one do not affect the other. */
+    public CubicSpline2D copy() {
+        CubicSpline2D output = new CubicSpline2D();
+        output.xSpline = xSpline.copy();
+        output.ySpline = ySpline.copy();
+        // cachedPath is replaced, never modified, so it can be shared.
+        output.cachedPath = cachedPath;
+        return output;
+    }
+
     public <T extends Point2D> CubicSpline2D (T[] points, boolean closed) {
         int cnt = points.length;
 
@@ -108,6 +119,54 @@ final public class CubicSpline2D implements BoundedParameterizable2D {
         ySpline = new CubicSpline1D(ts, ys);
     }
 
+    /** Default tolerance for setVertex(), relative to the total
+        chord length of the curve. */
+    static final double SET_VERTEX_RELATIVE_TOLERANCE = 1e-12;
+
+    /** Like setVertex(vertexNo, p, tolerance) using a tolerance equal
+        to SET_VERTEX_RELATIVE_TOLERANCE times the total chord
+        length. */
+    public boolean setVertex(int vertexNo, Point2D p) {
+        double[] ts = xSpline.xs;
+        return setVertex(vertexNo, p,
+                SET_VERTEX_RELATIVE_TOLERANCE * ts[ts.length - 1]);
+    }
+
+    /** Move vertex #vertexNo to p, updating this spline in place
+        instead of recomputing it from scratch. See
+        CubicSpline1D.setVertex() for the meaning of tolerance.
+
+        @return false, without changing anything, if this is not an
+        open spline created by the public constructors or if p
+        coincides with a neighboring vertex. In that case, construct a
+        new spline instead. */
+    public boolean setVertex(int vertexNo, Point2D p, double tolerance) {
+        if (xSpline.d2s == null || ySpline.d2s == null) {
+            return false;
+        }
+        double[] ts = xSpline.xs;
+        int n = ts.length;
+        double t = ts[vertexNo];
+        double shift = 0;
+        if (vertexNo > 0) {
+            t = ts[vertexNo - 1] + p.distance(getVertex(vertexNo - 1));
+            if (t <= ts[vertexNo - 1]) {
+                return false;
+            }
+        }
+        if (vertexNo < n - 1) {
+            double next = t + p.distance(getVertex(vertexNo + 1));
+            if (next <= t) {
+                return false;
+            }
+            shift = next - ts[vertexNo + 1];
+        }
+        xSpline.setVertex(vertexNo, t, p.getX(), shift, tolerance);
+        ySpline.setVertex(vertexNo, t, p.getY(), shift, tolerance);
+        cachedPath = null;
+        return true;
+    }
+
     public int segmentCnt() {
         return xSpline.segmentCnt();
     }
@@ -164,8 +223,12 @@ final public class CubicSpline2D implements BoundedParameterizable2D {
         int cnt = xSpline.segmentCnt();
         double me2 = maxError * maxError / 16;
 
+        double[][] scratch = new double[3][2];
         for (int segment = 0; segment < cnt; ++segment) {
-            samplePoints(output, segment, 0., 1., me2);
+            samplePoints(output, segment, 0., 1.,
+                         xSpline.value(segment, 0.), ySpline.value(segment, 0.),
+                         xSpline.value(segment, 1.), ySpline.value(segment, 1.),
+                         me2, scratch);
         }
 
         /** We have to add the last point manually; see the comments
@@ -175,32 +238,51 @@ final public class CubicSpline2D implements BoundedParameterizable2D {
     }
 
     /** Recursively, adaptively add enough points to output to keep
-        the square of the error term under maxError2. The last point
+        the square of the error term under maxError2. (x0, y0) and
+        (x1, y1) are the curve's values at t0 and t1. The last point
         (at t1) is not added, because it is assumed that it will be
-        added by the next section.
+        added by the next section. scratch holds three length-2
+        buffers for the t, x, and y values of the two interior
+        points, which are evaluated in one batch per coordinate.
     */
     protected void samplePoints(ArrayList<Point2D.Double> output,
                                 int segment, double t0, double t1,
-                                double maxError2) {
+                                double x0, double y0, double x1, double y1,
+                                double maxError2, double[][] scratch) {
         double delta = t1 - t0;
         double t01 = t0 + delta/3;
         double t02 = t0 + 2*delta/3;
-        Point2D.Double v0 = value(segment, t0);
-        Point2D.Double v01 = value(segment, t01);
-        Point2D.Double v02 = value(segment, t02);
-        Point2D.Double v1 = value(segment, t1);
-
-        double me2 = v01.distanceSq(Geom.mean(v0,v02)) +
-            v02.distanceSq(Geom.mean(v01,v1));
+        double[] ts = scratch[0];
+        double[] xs = scratch[1];
+        double[] ys = scratch[2];
+        ts[0] = t01;
+        ts[1] = t02;
+        // Work with primitives, and only allocate the points that
+        // are actually output.
+        xSpline.value(segment, ts, xs);
+        ySpline.value(segment, ts, ys);
+        double x01 = xs[0];
+        double y01 = ys[0];
+        double x02 = xs[1];
+        double y02 = ys[1];
+
+        double ex1 = x01 - (x0 + x02) / 2;
+        double ey1 = y01 - (y0 + y02) / 2;
+        double ex2 = x02 - (x01 + x1) / 2;
+        double ey2 = y02 - (y01 + y1) / 2;
+        double me2 = ex1 * ex1 + ey1 * ey1 + ex2 * ex2 + ey2 * ey2;
 
         if (me2 > maxError2) {
-            samplePoints(output, segment, t0, t01, maxError2);
-            samplePoints(output, segment, t01, t02, maxError2);
-            samplePoints(output, segment, t02, t1, maxError2);
+            samplePoints(output, segment, t0, t01, x0, y0, x01, y01,
+                         maxError2, scratch);
+            samplePoints(output, segment, t01, t02, x01, y01, x02, y02,
+                         maxError2, scratch);
+            samplePoints(output, segment, t02, t1, x02, y02, x1, y1,
+                         maxError2, scratch);
         } else {
-            output.add(v0);
-            output.add(v01);
-            output.add(v02);
+            output.add(new Point2D.Double(x0, y0));
+            output.add(new Point2D.Double(x01, y01));
+            output.add(new Point2D.Double(x02, y02));
         }
     }
 
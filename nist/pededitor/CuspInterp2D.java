@@ -5,6 +5,7 @@ package gov.nist.pededitor;
 
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Line2D;
+import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Path2D;
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
@@ -20,6 +21,43 @@ public class CuspInterp2D extends PointsInterp2D
     implements Smoothable, CurveCloseable {
     protected ArrayList<Boolean> smoothed = new ArrayList<>();
     protected boolean closed;
+    /** A spline through all of a curve's points after transformation
+        by xform (null for the identity). Neither the fields nor the
+        spline change after construction, so one SplineCache can be
+        shared by a curve, its transformed copies, and other
+        threads. */
+    static class SplineCache {
+        final CubicSpline2D spline;
+        final AffineTransform xform;
+
+        SplineCache(CubicSpline2D spline, AffineTransform xform) {
+            this.spline = spline;
+            this.xform = (xform == null) ? null : new AffineTransform(xform);
+            if (spline.cachedPath == null) {
+                // Fill in the path that spline caches before sharing
+                // it.
+                spline.path();
+            }
+        }
+    }
+
+    /** Spline cached for open curves whose vertexes are all smoothed,
+        so that moving one vertex can update it instead of rebuilding
+        it, or null. Chord lengths scale uniformly under similarity
+        transforms (rotations, reflections, uniform scaling, and
+        translations), so a transform that differs from the cache's
+        by only a similarity can reuse the spline by transforming its
+        path. That lets one spline serve both the principal-to-page
+        transform and the scaled one used for drawing.
+
+        splineCache and staleVertex are guarded by this object's
+        lock. */
+    protected transient SplineCache splineCache = null;
+    /** The vertex that set() changed since splineCache was last
+        updated, or -1 if none. Updates are applied lazily so that
+        setting every vertex in turn discards the spline instead of
+        updating it once per vertex. */
+    protected transient int staleVertex = -1;
 
     public CuspInterp2D(boolean closed) {
         this.closed = closed;
@@ -82,6 +120,7 @@ public class CuspInterp2D extends PointsInterp2D
     @Override public final void setSmoothed(int vertexNo, boolean value) {
         if (value != isSmoothed(vertexNo)) {
             param = null;
+            clearSpline();
             smoothed.set(vertexNo, value);
         }
     }
@@ -161,8 +200,26 @@ public class CuspInterp2D extends PointsInterp2D
         // getParameterization().value(i).
         int nextUnsmoothed = nextUnsmoothed(0);
         if (nextUnsmoothed == s) { // Smooth entire curve.
-            return new CubicSpline2D(points.toArray(new Point2D.Double[0]),
-                    isClosed()).path();
+            if (isClosed()) {
+                return new CubicSpline2D(points.toArray(new Point2D.Double[0]),
+                        true).path();
+            }
+            SplineCache c = updateSpline();
+            if (c == null) {
+                c = cacheSpline(null);
+            }
+            AffineTransform rel = relativeTransform(c, null);
+            if (rel == null) {
+                // The cached spline belongs to a different space, such
+                // as the page; leave it alone.
+                return new CubicSpline2D(points.toArray(new Point2D.Double[0]))
+                    .path();
+            }
+            Path2D.Double path = c.spline.path();
+            if (!rel.isIdentity()) {
+                path.transform(rel);
+            }
+            return path;
         }
 
         temp = points.get(0);
@@ -242,9 +299,122 @@ public class CuspInterp2D extends PointsInterp2D
         return res;
     }
 
-    @Override public void remove(int vertexNo) {
+    @Override public synchronized void remove(int vertexNo) {
         super.remove(vertexNo);
         smoothed.remove(vertexNo);
+        splineCache = null;
+    }
+
+    @Override public synchronized void set(int vertexNo, Point2D point) {
+        super.set(vertexNo, point);
+        if (splineCache != null && staleVertex != vertexNo) {
+            if (staleVertex == -1) {
+                staleVertex = vertexNo;
+            } else {
+                splineCache = null;
+            }
+        }
+    }
+
+    /** @return true if getShape() draws the whole curve as one
+        spline. */
+    boolean isOneSpline() {
+        return size() > 2 && !isClosed() && nextUnsmoothed(0) == size();
+    }
+
+    synchronized void clearSpline() {
+        splineCache = null;
+    }
+
+    /** Apply the pending set() call, if any, to a copy of the cached
+        spline, which replaces the cached one, so that splines that
+        were already handed out never change.
+
+        @return the updated cache, or null if there is none. */
+    synchronized SplineCache updateSpline() {
+        SplineCache c = splineCache;
+        if (c != null && staleVertex != -1) {
+            Point2D.Double p = points.get(staleVertex);
+            if (c.xform != null) {
+                p = (Point2D.Double) c.xform.transform(p, new Point2D.Double());
+            }
+            CubicSpline2D s = c.spline.copy();
+            c = s.setVertex(staleVertex, p) ? new SplineCache(s, c.xform) : null;
+            splineCache = c;
+        }
+        staleVertex = -1;
+        return c;
+    }
+
+    /** Cache and return the spline through the points transformed
+        by xform (null for the identity). */
+    synchronized SplineCache cacheSpline(AffineTransform xform) {
+        splineCache = new SplineCache(new CubicSpline2D((xform == null)
+                        ? points.toArray(new Point2D.Double[0])
+                        : transformPoints(xform)), xform);
+        staleVertex = -1;
+        return splineCache;
+    }
+
+    /** @return the similarity transform that maps c's spline to the
+        spline through the points transformed by xform (null for the
+        identity), or null if no such similarity exists. */
+    static AffineTransform relativeTransform(SplineCache c,
+            AffineTransform xform) {
+        AffineTransform rel = (xform == null) ? new AffineTransform()
+            : new AffineTransform(xform);
+        if (c.xform != null) {
+            try {
+                rel.concatenate(c.xform.createInverse());
+            } catch (NoninvertibleTransformException x) {
+                return null;
+            }
+        }
+        return isSimilarity(rel) ? rel : null;
+    }
+
+    /** @return true if xform is a similarity transform, to within
+        roundoff error. */
+    static boolean isSimilarity(AffineTransform xform) {
+        double a = xform.getScaleX();
+        double b = xform.getShearY();
+        double c = xform.getShearX();
+        double d = xform.getScaleY();
+        double tol = 1e-12 * (a * a + b * b + c * c + d * d);
+        return tol > 0 && Math.abs(a * c + b * d) <= tol
+            && Math.abs(a * a + b * b - c * c - d * d) <= tol;
+    }
+
+    /** @return a cache that holds c's spline for the curve whose
+        points are the points c was built from transformed by xform,
+        or null if xform is not invertible. */
+    static SplineCache transformedCache(SplineCache c, AffineTransform xform) {
+        try {
+            AffineTransform sx = (c.xform == null) ? new AffineTransform()
+                : new AffineTransform(c.xform);
+            sx.concatenate(xform.createInverse());
+            return new SplineCache(c.spline, sx);
+        } catch (NoninvertibleTransformException x) {
+            return null;
+        }
+    }
+
+    /** Transform all vertices. The spline remains valid for the
+        transformed points once its transform is adjusted. */
+    @Override public synchronized void transform(AffineTransform xform) {
+        SplineCache c = updateSpline();
+        super.transform(xform);
+        splineCache = (c == null) ? null : transformedCache(c, xform);
+    }
+
+    @Override public synchronized <T extends Point2D> void setPoints(List<T> points) {
+        super.setPoints(points);
+        splineCache = null;
+    }
+
+    @Override protected synchronized void setCoordinates(double[] coords) {
+        super.setCoordinates(coords);
+        splineCache = null;
     }
 
     /* Like add(vertexNo, point, false). */
@@ -256,14 +426,36 @@ public class CuspInterp2D extends PointsInterp2D
        then use a smooth curve to connect the new vertex to the
        vertexes that preced and follow it. Otherwise, make no attempt
        to smooth the curve around the new point. */
-    public void add(int vertexNo, Point2D point, boolean smoothed) {
+    public synchronized void add(int vertexNo, Point2D point, boolean smoothed) {
         super.add(vertexNo, point);
         this.smoothed.add(vertexNo, smoothed);
+        splineCache = null;
     }
 
+    /** For fully smoothed open curves, the copy shares this curve's
+        spline, which is moved into the space of xform first if xform
+        is not a similarity. So a curve that is drawn through a
+        transformed copy, as Interp2DDecoration.draw() does, only
+        updates its spline when one vertex moves. The spline cache is
+        replaced rather than modified and is guarded by this curve's
+        lock, so copies may be made from any thread. */
     @Override public CuspInterp2D createTransformed(AffineTransform xform) {
-        return new CuspInterp2D(Arrays.asList(transformPoints(xform)),
+        CuspInterp2D res = new CuspInterp2D(Arrays.asList(transformPoints(xform)),
                 smoothed, isClosed());
+        if (isOneSpline()) {
+            SplineCache c;
+            synchronized (this) {
+                c = updateSpline();
+                if ((c == null || relativeTransform(c, xform) == null)
+                        && !isSimilarity(xform)) {
+                    c = cacheSpline(xform);
+                }
+            }
+            if (c != null) {
+                res.splineCache = transformedCache(c, xform);
+            }
+        }
+        return res;
     }
 
     @Override public String toString() {
@@ -292,6 +484,7 @@ public class CuspInterp2D extends PointsInterp2D
     @Override public void setClosed(boolean b) {
         super.setClosed(b);
         closed = b;
+        clearSpline();
     }
 
 }
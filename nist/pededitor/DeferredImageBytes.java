@@ -0,0 +1,151 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+/** The "bytes" value of a SourceImage in JSON format. When a PED file
+    is loaded with the FILE_ATTRIBUTE deserialization attribute set,
+    the base64-encoded image is skipped over instead of being decoded,
+    and only its position in the file is stored, so that the image
+    bytes are not read until they are needed. Otherwise, the bytes are
+    decoded immediately.
+
+    In the PEDContainer format, the "imageEntry" value is deserialized
+    into an instance of this class that refers to the container entry
+    that holds the image bytes. */
+class DeferredImageBytes {
+    /** Deserialization attribute whose value, if set, is the Source
+        being read. */
+    static final String FILE_ATTRIBUTE = "gov.nist.pededitor.DeferredImageBytes";
+
+    /** A PED file as it was when it was loaded. */
+    static class Source {
+        final Path file;
+        /** True for PEDContainer files. */
+        final boolean container;
+        final long size;
+        final FileTime modified;
+
+        Source(Path file, boolean container) throws IOException {
+            this.file = file;
+            this.container = container;
+            size = Files.size(file);
+            modified = Files.getLastModifiedTime(file);
+        }
+
+        /** @throws IOException if the file has changed since this was
+            created. */
+        void verify() throws IOException {
+            if (Files.size(file) != size
+                || !Files.getLastModifiedTime(file).equals(modified)) {
+                throw new IOException("'" + file + "' has changed since it was loaded");
+            }
+        }
+    }
+
+    /** The decoded bytes, or null if they were deferred. */
+    final byte[] bytes;
+    final Source source;
+    /** The byte offset within source of the JSON string that holds
+        the image. */
+    final long offset;
+    /** The container entry that holds the image, or null. */
+    final String entry;
+
+    DeferredImageBytes(byte[] bytes) {
+        this.bytes = bytes;
+        source = null;
+        offset = -1;
+        entry = null;
+    }
+
+    DeferredImageBytes(Source source, long offset) {
+        bytes = null;
+        this.source = source;
+        this.offset = offset;
+        entry = null;
+    }
+
+    DeferredImageBytes(Source source, String entry) {
+        bytes = null;
+        this.source = source;
+        offset = -1;
+        this.entry = entry;
+    }
+
+    /** @return the decoded image bytes. */
+    byte[] read() throws IOException {
+        if (bytes != null) {
+            return bytes;
+        }
+        source.verify();
+        if (entry != null) {
+            return PEDContainer.readEntry(source.file, entry);
+        }
+        try (FileChannel ch = FileChannel.open(source.file)) {
+            ch.position(offset);
+            InputStream is = Channels.newInputStream(ch);
+            try (JsonParser p = Diagram.getObjectMapper().getFactory()
+                 .createParser(is)) {
+                if (p.nextToken() != JsonToken.VALUE_STRING) {
+                    throw new IOException("'" + source.file + "': no image at offset "
+                            + offset);
+                }
+                return p.getBinaryValue();
+            }
+        }
+    }
+
+    @SuppressWarnings("serial")
+    static class Deserializer extends StdDeserializer<DeferredImageBytes> {
+        Deserializer() {
+            super(DeferredImageBytes.class);
+        }
+
+        @Override public DeferredImageBytes deserialize
+            (JsonParser p, DeserializationContext ctxt) throws IOException {
+            Object source = ctxt.getAttribute(FILE_ATTRIBUTE);
+            // Byte offsets are only known when parsing UTF-8 bytes,
+            // not when parsing a String or a token buffer.
+            long offset = p.getTokenLocation().getByteOffset();
+            if (source instanceof Source && !((Source) source).container
+                && offset >= 0 && p.hasToken(JsonToken.VALUE_STRING)) {
+                // Leaving the string unread is allowed: the parser
+                // skips over it without decoding it.
+                return new DeferredImageBytes((Source) source, offset);
+            }
+            return new DeferredImageBytes(p.getBinaryValue(ctxt.getBase64Variant()));
+        }
+    }
+
+    /** Deserializer for PEDContainer "imageEntry" values. */
+    @SuppressWarnings("serial")
+    static class EntryDeserializer extends StdDeserializer<DeferredImageBytes> {
+        EntryDeserializer() {
+            super(DeferredImageBytes.class);
+        }
+
+        @Override public DeferredImageBytes deserialize
+            (JsonParser p, DeserializationContext ctxt) throws IOException {
+            Object source = ctxt.getAttribute(FILE_ATTRIBUTE);
+            if (!(source instanceof Source) || !((Source) source).container) {
+                throw new IOException("Image entry '" + p.getText()
+                        + "' found outside of a PED container");
+            }
+            return new DeferredImageBytes((Source) source, p.getText());
+        }
+    }
+}
@@ -28,18 +28,24 @@ import java.awt.print.PageFormat;
 import java.awt.print.Printable;
 import java.awt.print.PrinterException;
 import java.awt.print.PrinterJob;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PrintWriter;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -48,6 +54,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Objects;
 import java.util.Observable;
 import java.util.Set;
 import java.util.TreeMap;
@@ -69,14 +76,21 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonSubTypes.Type;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import com.fasterxml.jackson.dataformat.smile.SmileConstants;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
 
 /** Main class for Phase Equilibria Diagrams and their presentation,
     but not including GUI elements such as menus and windows. */
 public class Diagram extends Observable implements Printable {
-    static ObjectMapper objectMapper = null;
     protected static final DecimalFormat STANDARD_PERCENT_FORMAT
         = new DecimalFormat("##0.00%");
 
@@ -238,6 +252,38 @@ public class Diagram extends Observable implements Printable {
         making transient changes that will be undone later. */
     transient int suppressUpdateCnt = 0;
 
+    /** Incremented each time propagateChange1() announces a change.
+        Values derived from the diagram's contents can be cached
+        alongside the changeCount at which they were computed. */
+    transient volatile long changeCount = 0;
+
+    /** Incremented each time propagateChange() or propagateChange1()
+        is called, even while updates are suppressed. If version has
+        not changed, then neither has the diagram, so dirty checks can
+        compare versions instead of serializing the diagram. */
+    transient volatile long version = 0;
+
+    /** Cached result of keyPointTree(). The keyPointTree fields are
+        guarded by keyPointTreeLock. A separate lock is used instead
+        of synchronizing on this, because Observable's methods
+        synchronize on this, and the event dispatch thread should not
+        have to wait for a background thread to finish building a
+        tree before it can report a change. */
+    transient KDTree2D<DecorationHandle> keyPointTree = null;
+    transient DecorationHandle.Type keyPointTreeType = null;
+    transient long keyPointTreeChangeCount = -1;
+    private final transient Object keyPointTreeLock = new Object();
+
+    /** Cached result of pageCurves(), guarded by pageCurvesLock. */
+    transient PageCurves pageCurves = null;
+    transient long pageCurvesChangeCount = -1;
+    private final transient Object pageCurvesLock = new Object();
+
+    /** Cached result of arcLengthTable(). */
+    transient ArcLengthTable arcLengthTable = null;
+    transient Object arcLengthTableObject = null;
+    transient long arcLengthTableChangeCount = -1;
+
     /** If an UpdateSuppressor object is created, then all changes are
         treated like no change at all, until the object is closed
         again. */
@@ -498,15 +544,18 @@ public class Diagram extends Observable implements Printable {
 
     /** setChanged() and then notifyObservers() */
     public void propagateChange1() {
+        ++version;
         if (suppressUpdateCnt > 0) {
             return;
         }
+        ++changeCount;
         setChanged();
         notifyObservers(null);
     }
 
     public void propagateChange() {
         if (suppressUpdateCnt > 0) {
+            ++version;
             return;
         }
         propagateChange1();
@@ -1609,10 +1658,6 @@ public class Diagram extends Observable implements Printable {
         return res;
     }
 
-    Point2D.Double transform(Point2D.Double p, LinearAxis v1, LinearAxis v2) {
-        return new Point2D.Double(v1.applyAsDouble(p), v2.applyAsDouble(p));
-    }
-
     Point2D.Double transform(Point2D.Double p, DoubleUnaryOperator f1, DoubleUnaryOperator f2) {
         return new Point2D.Double(f1.applyAsDouble(p.getX()), f2.applyAsDouble(p.getY()));
     }
@@ -1718,16 +1763,26 @@ public class Diagram extends Observable implements Printable {
         propagateChange();
     }
 
-    String toString(Iterable<Point2D.Double> g,
+    String toString(Collection<Point2D.Double> g,
                     LinearAxis v1, DoubleUnaryOperator f1,
                     LinearAxis v2, DoubleUnaryOperator f2,
                     int sigFigs) {
+        // Convert the whole group through each axis at once, since
+        // digitized curves may have many thousands of points.
+        int cnt = g.size();
+        double[] xys = Geom.toCoordinates(g);
+        double[] xs = new double[cnt];
+        double[] ys = new double[cnt];
+        v1.applyAsDouble(xys, 0, xs, 0, cnt);
+        v2.applyAsDouble(xys, 0, ys, 0, cnt);
+
         StringBuilder sb = new StringBuilder();
         String format = "%." + sigFigs + "g";
-        for (Point2D.Double p: g) {
-            p = transform(transform(p, v1, v2), f1, f2);
-            sb.append(String.format(format, p.getX()) + ", "
-                      + String.format(format, p.getY()) + '\n');
+        for (int i = 0; i < cnt; ++i) {
+            sb.append(String.format(format, f1.applyAsDouble(xs[i])));
+            sb.append(", ");
+            sb.append(String.format(format, f2.applyAsDouble(ys[i])));
+            sb.append('\n');
         }
         return sb.toString();
     }
@@ -2192,8 +2247,61 @@ public class Diagram extends Observable implements Printable {
         }
 
         res.addAll(getDecorationHandles(type));
-        // Add all segment midpoints.
-        for (Decoration d0: getDecorations()) {
+        addMidpointHandles(res, getDecorations());
+        return res;
+    }
+
+    /**
+     * @return the key points that involve at least one of the
+     * decorations in decs: the handles and segment midpoints of
+     * decs, and the intersections of decs with each other and with
+     * the rest of the diagram. decs need not belong to the diagram;
+     * temporary construction lines are allowed too. */
+    public ArrayList<DecorationHandle> keyPointHandles(
+            DecorationHandle.Type type, List<Decoration> decs) {
+        ArrayList<DecorationHandle> res = new ArrayList<>();
+        ArrayList<Decoration> others = new ArrayList<>(getDecorations());
+        others.removeAll(decs);
+        for (Point2D.Double p: intersections(decs)) {
+            res.add(new NullDecorationHandle(p));
+        }
+        for (Point2D.Double p: intersections(decs, others)) {
+            res.add(new NullDecorationHandle(p));
+        }
+        for (Decoration d: decs) {
+            res.addAll(getHandles(d, type));
+        }
+        addMidpointHandles(res, decs);
+        return res;
+    }
+
+    /**
+     * @return a k-d tree, keyed by page location, of
+     * keyPointHandles(type). The tree is cached until the next call
+     * to propagateChange1(), so changes made while updates are
+     * suppressed are not reflected in it. */
+    KDTree2D<DecorationHandle> keyPointTree(DecorationHandle.Type type) {
+        synchronized (keyPointTreeLock) {
+            // Read changeCount before building, so that if the
+            // diagram changes during the build, the tree is not
+            // mistaken for a current one afterwards.
+            long count = changeCount;
+            if (keyPointTree == null || keyPointTreeType != type
+                    || keyPointTreeChangeCount != count) {
+                keyPointTree = new KDTree2D<>(keyPointHandles(type),
+                        h -> pageLocation(h));
+                keyPointTreeType = type;
+                keyPointTreeChangeCount = count;
+            }
+            return keyPointTree;
+        }
+    }
+
+    /** Add handles for the midpoints of the straight segments of decs
+        to res. */
+    void addMidpointHandles(List<DecorationHandle> res,
+            List<Decoration> decs) {
+        for (Decoration d0: decs) {
             if (!(d0 instanceof Interp2DDecoration)) {
                 continue;
             }
@@ -2206,8 +2314,6 @@ public class Diagram extends Observable implements Printable {
                                 param.getLocation(t)));
             }
         }
-
-        return res;
     }
 
     /**
@@ -2300,10 +2406,17 @@ public class Diagram extends Observable implements Printable {
      *         back into principal space.
      */
     List<Point2D.Double> intersections() {
+        return intersections(getDecorations());
+    }
+
+    /**
+     * @return all point intersections between pairs of decorations in
+     *         decs. */
+    List<Point2D.Double> intersections(List<Decoration> decs) {
         ArrayList<Point2D.Double> res = new ArrayList<>();
-        Line2D.Double[] segs = getLineSegments();
-        BoundedParam2D[] straights = getStraightSegments();
-        BoundedParam2D[] curves = getCurvedSegments();
+        Line2D.Double[] segs = getLineSegments(decs);
+        BoundedParam2D[] straights = getStraightSegments(decs);
+        BoundedParam2D[] curves = getCurvedSegments(decs);
 
         int cs = curves.length;
         for (int i = 0; i < cs; ++i) {
@@ -2339,12 +2452,70 @@ public class Diagram extends Observable implements Printable {
         return res.stream().map(p -> standardPageToPrincipal.transform(p)).collect(Collectors.toList());
     }
 
+    /**
+     * @return all point intersections between a decoration in decs1
+     *         and a decoration in decs2.
+     */
+    List<Point2D.Double> intersections(List<Decoration> decs1,
+            List<Decoration> decs2) {
+        ArrayList<Point2D.Double> res = new ArrayList<>();
+        Line2D.Double[] segs1 = getLineSegments(decs1);
+        Line2D.Double[] segs2 = getLineSegments(decs2);
+        BoundedParam2D[] curves1 = getCurvedSegments(decs1);
+        BoundedParam2D[] curves2 = getCurvedSegments(decs2);
+        BoundedParam2D[] straights1 = getStraightSegments(decs1);
+
+        for (BoundedParam2D curve: curves1) {
+            for (Line2D segment: segs2) {
+                for (double t: curve.segIntersections(segment)) {
+                    res.add(curve.getLocation(t));
+                }
+            }
+
+            for (BoundedParam2D curve2: curves2) {
+                try {
+                    for (Point2D.Double p: BoundedParam2Ds.intersections
+                             (curve, curve2, 1e-9, 80)) {
+                        res.add(p);
+                    }
+                } catch (FailedToConvergeException x) {
+                    System.err.println(x);
+                    // That's OK.
+                }
+            }
+        }
+
+        for (BoundedParam2D curve: curves2) {
+            for (Line2D segment: segs1) {
+                for (double t: curve.segIntersections(segment)) {
+                    res.add(curve.getLocation(t));
+                }
+            }
+        }
+
+        for (BoundedParam2D straight: straights1) {
+            for (Line2D segment: segs2) {
+                for (double t: straight.segIntersections(segment)) {
+                    res.add(straight.getLocation(t));
+                }
+            }
+        }
+
+        return res.stream().map(p -> standardPageToPrincipal.transform(p)).collect(Collectors.toList());
+    }
+
     /** @return an array of all curved segments defined for this
         diagram in page coordinates. */
     @JsonIgnore public BoundedParam2D[] getCurvedSegments() {
+        return getCurvedSegments(getDecorations());
+    }
+
+    /** @return an array of all curved segments of decs in page
+        coordinates. */
+    BoundedParam2D[] getCurvedSegments(List<Decoration> decs) {
         ArrayList<BoundedParam2D> res = new ArrayList<>();
 
-        for (Decoration d: getDecorations()) {
+        for (Decoration d: decs) {
             BoundedParam2D bp = getStandardPageParameterization(d);
             if (bp == null)
                 continue;
@@ -2359,9 +2530,15 @@ public class Diagram extends Observable implements Printable {
     /** @return an array of all straight segments defined for this
         diagram in page coordinates. */
     @JsonIgnore public BoundedParam2D[] getStraightSegments() {
+        return getStraightSegments(getDecorations());
+    }
+
+    /** @return an array of all straight segments of decs in page
+        coordinates. */
+    BoundedParam2D[] getStraightSegments(List<Decoration> decs) {
         ArrayList<BoundedParam2D> res = new ArrayList<>();
 
-        for (Decoration d: getDecorations()) {
+        for (Decoration d: decs) {
             BoundedParam2D bp = getStandardPageParameterization(d);
             if (bp == null)
                 continue;
@@ -2376,7 +2553,13 @@ public class Diagram extends Observable implements Printable {
     /** @return an array of all straight line segments defined for
         this diagram in page coordinates. */
     @JsonIgnore public Line2D.Double[] getLineSegments() {
-        BoundedParam2D[] segments = getStraightSegments();
+        return getLineSegments(getDecorations());
+    }
+
+    /** @return an array of all straight line segments of decs in page
+        coordinates. */
+    Line2D.Double[] getLineSegments(List<Decoration> decs) {
+        BoundedParam2D[] segments = getStraightSegments(decs);
         Line2D.Double[] res = new Line2D.Double[segments.length];
         for (int i = 0; i < segments.length; ++i) {
             BoundedParam2D bp = segments[i];
@@ -2385,36 +2568,323 @@ public class Diagram extends Observable implements Printable {
         return res;
     }
 
+    /** The curves and rulers of a list of decorations in standard
+        page space, with a PolylineIndex for finding the one nearest
+        to a point. */
+    static class PageCurves {
+        ArrayList<Decoration> decs = new ArrayList<>();
+        ArrayList<Interp2D> curves = new ArrayList<>();
+        /** The parameterizations of curves. */
+        ArrayList<BoundedParam2D> params = new ArrayList<>();
+        PolylineIndex index;
+
+        PageCurves(List<Decoration> decorations, AffineTransform principalToStandardPage,
+                double tolerance) {
+            for (Decoration dec0: decorations) {
+                if (!(dec0 instanceof Interp2DDecoration)) {
+                    continue;
+                }
+                Interp2DDecoration dec = (Interp2DDecoration) dec0;
+                Interp2D curve = dec.getCurve().createTransformed(principalToStandardPage);
+                BoundedParam2D b = curve.getParameterization();
+                if (curve.size() >= 2 && b != null) {
+                    decs.add(dec);
+                    curves.add(curve);
+                    params.add(b);
+                }
+            }
+            index = new PolylineIndex(params, tolerance);
+        }
+
+        /** @return the curve whose outline comes closest to
+            pagePoint, or null if there are no curves. */
+        DecorationDistance nearest(Point2D pagePoint) {
+            OffsetParam2D.DistanceIndex di = index.distance(pagePoint, 1e-6, 2000);
+            return (di == null) ? null
+                : new DecorationDistance(decs.get(di.index), di.distance,
+                        curves.get(di.index));
+        }
+    }
+
+    /** @return the maximum distance between a curve and the polyline
+        that approximates it in a PageCurves object. */
+    double pageCurvesTolerance() {
+        return 2.5e-4 * pagePerimeter();
+    }
+
+    PageCurves pageCurves(List<Decoration> decs) {
+        return new PageCurves(decs, principalToStandardPage,
+                pageCurvesTolerance());
+    }
+
+    /** @return the PageCurves object for all decorations. It is cached
+        until the next call to propagateChange1(), so changes made
+        while updates are suppressed are not reflected in it. */
+    PageCurves pageCurves() {
+        synchronized (pageCurvesLock) {
+            long count = changeCount; // See keyPointTree().
+            if (pageCurves == null || pageCurvesChangeCount != count) {
+                pageCurves = pageCurves(getDecorations());
+                pageCurvesChangeCount = count;
+            }
+            return pageCurves;
+        }
+    }
+
     /**
      * Return the DecorationDistance for the curve or ruler whose
      * outline comes closest to pagePoint. This routine operates
      * entirely in standard page space, both internally and in terms
      * of the input and output values. */
     DecorationDistance nearestCurve(Point2D pagePoint) {
-        ArrayList<Decoration> decs = new ArrayList<>();
-        ArrayList<Interp2D> curves = new ArrayList<>();
-        ArrayList<BoundedParam2D> params = new ArrayList<>();
-        for (Decoration dec0: getDecorations()) {
-            if (!(dec0 instanceof Interp2DDecoration)) {
+        return pageCurves().nearest(pagePoint);
+    }
+
+    /** Like nearestCurve(pagePoint), but consider the curves in
+        cached plus those in extras, which are not reflected in
+        cached. */
+    DecorationDistance nearestCurve(PageCurves cached, List<Decoration> extras,
+            Point2D pagePoint) {
+        DecorationDistance res = cached.nearest(pagePoint);
+        if (extras.isEmpty()) {
+            return res;
+        }
+        DecorationDistance res2 = pageCurves(extras).nearest(pagePoint);
+        return (res == null
+                || (res2 != null && res2.distance.distance < res.distance.distance))
+            ? res2 : res;
+    }
+
+    static enum AutoPositionType { NONE, CURVE, POINT };
+    static class AutoPositionHolder {
+        AutoPositionType position = AutoPositionType.NONE;
+    }
+
+    /** The editor state besides the diagram itself that
+        autoPositionHandle() depends on. */
+    static class AutoPositionContext {
+        /** The principal location of the selected vertex, or null. */
+        Point2D.Double selection;
+        /** The principal location of the vertex next to the
+            selection, or null. */
+        Point2D.Double secondary;
+        boolean selectionIsArc;
+        /** Directions of grid lines in principal coordinates; see
+            nearestGridLine(). */
+        List<Point2D.Double> gridVectors = new ArrayList<>();
+        /** Screen pixels per page unit. */
+        double scale;
+
+        @Override public boolean equals(Object other0) {
+            if (this == other0) {
+                return true;
+            }
+            if (!(other0 instanceof AutoPositionContext)) {
+                return false;
+            }
+            AutoPositionContext other = (AutoPositionContext) other0;
+            return Objects.equals(selection, other.selection)
+                && Objects.equals(secondary, other.secondary)
+                && selectionIsArc == other.selectionIsArc
+                && gridVectors.equals(other.gridVectors)
+                && scale == other.scale;
+        }
+
+        @Override public int hashCode() {
+            return Objects.hash(selection, secondary, selectionIsArc,
+                    gridVectors, scale);
+        }
+    }
+
+    /** Like BasicEditor.getAutoPositionHandle(ap, keypointsOnly), but
+        for the mouse at principal location mprin2, which must not be
+        null, and with the editor state given by context. */
+    DecorationHandle autoPositionHandle(AutoPositionHolder ap,
+            boolean keypointsOnly, Point2D mprin2, AutoPositionContext context) {
+        double maxMovePixels = 50; // Maximum number of pixels to
+        if (ap == null) {
+            ap = new AutoPositionHolder();
+        }
+        ap.position = AutoPositionType.NONE;
+        double scale = context.scale;
+        Point2D.Double mousePage = principalToStandardPage.transform(mprin2);
+
+        DecorationHandle res = null;
+        Point2D.Double newPage = null;
+        double pageDist = 1e100;
+
+        // Temporary construction lines and circles are not added to
+        // the diagram, so this method does not modify anything. Key
+        // points and curves that involve them are computed separately
+        // from the cached ones for the diagram itself.
+        KDTree2D<DecorationHandle> keyPoints = keyPointTree(
+                DecorationHandle.Type.SELECTION);
+        PageCurves pageCurves = keypointsOnly ? null : pageCurves();
+        ArrayList<Decoration> temps = new ArrayList<>();
+
+        ArrayList<Point2D> selections = new ArrayList<>();
+
+        // Copy the points, because they are transformed in place below.
+        Point2D.Double selPoint = (context.selection == null) ? null
+            : new Point2D.Double(context.selection.x, context.selection.y);
+        if (selPoint != null) {
+            selections.add(selPoint);
+        }
+        Point2D.Double point2 = (context.secondary == null) ? null
+            : new Point2D.Double(context.secondary.x, context.secondary.y);
+        if (point2 != null) {
+            selections.add(point2);
+            double dx = selPoint.x - point2.x;
+            double dy = selPoint.y - point2.y;
+
+            if (!context.selectionIsArc) {
+                Point2D[] diameter = {
+                    point2,
+                    new Point2D.Double(selPoint.x + dx, selPoint.y + dy) };
+                temps.add(new ArcDecoration(
+                                new ArcInterp2D(Arrays.asList(diameter))));
+            }
+
+            double distPixels = point2.distance(selPoint) * scale;
+            if (distPixels > maxMovePixels * 2) {
+                // Add the line through the midpoint of (selPoint, point2).
+                Point2D.Double midpoint = Geom.midpoint(selPoint, point2);
+                Point2D[] midpointLine = { midpoint,
+                                           new Point2D.Double(midpoint.x - dy, midpoint.y + dx) };
+                principalToStandardPage.transform(midpointLine, 0, midpointLine, 0,
+                        midpointLine.length);
+                Line2D.Double pageSeg = pageSegmentToLine(new Line2D.Double(
+                                midpointLine[0], midpointLine[1]));
+                midpointLine[0] = pageSeg.getP1();
+                midpointLine[1] = pageSeg.getP2();
+                standardPageToPrincipal.transform(midpointLine, 0, midpointLine, 0,
+                        midpointLine.length);
+                temps.add(new CuspDecoration(
+                                new CuspInterp2D(Arrays.asList(midpointLine), false, false)));
+            }
+        }
+
+        for (Point2D p: selections) {
+            principalToStandardPage.transform(p, p);
+            ArrayList<Point2D.Double> vectors = new ArrayList<>();
+            for (Point2D.Double v: context.gridVectors) {
+                vectors.add(new Point2D.Double(v.x, v.y));
+            }
+            Line2D.Double gridLine = nearestGridLine(
+                    new Line2D.Double(p, mousePage), vectors);
+            if (gridLine == null) {
                 continue;
             }
-            Interp2DDecoration dec = (Interp2DDecoration) dec0;
-            Interp2D curve = dec.getCurve().createTransformed(principalToStandardPage);
-            BoundedParam2D b = curve.getParameterization();
-            if (curve.size() >= 2 && b != null) {
-                decs.add(dec);
-                curves.add(curve);
-                params.add(b);
+            gridLine = Geom.transform(standardPageToPrincipal, gridLine);
+            temps.add(new CuspDecoration(new CuspInterp2D(gridLine),
+                                 StandardStroke.INVISIBLE, 0));
+        }
+
+        ArrayList<DecorationHandle> tempHands = keyPointHandles(
+                DecorationHandle.Type.SELECTION, temps);
+        res = keyPoints.nearest(mousePage);
+        if (res != null) {
+            newPage = pageLocation(res);
+            pageDist = mousePage.distance(newPage);
+        }
+        DecorationHandle tempRes = nearest(tempHands, mousePage);
+        if (tempRes != null) {
+            Point2D.Double tempPage = pageLocation(tempRes);
+            double tempDist = mousePage.distance(tempPage);
+            if (res == null || tempDist < pageDist) {
+                res = tempRes;
+                newPage = tempPage;
+                pageDist = tempDist;
             }
         }
 
-        if (params.size() == 0) {
-            return null;
+        final double OVERLAP_DISTANCE = 1e-10;
+        ArrayList<DecorationHandle> hands = (newPage == null)
+            ? new ArrayList<>()
+            : keyPoints.within(newPage, OVERLAP_DISTANCE);
+        hands.addAll(tempHands);
+        int parameterizableCnt = 0;
+        for (DecorationHandle h: hands) {
+            Point2D.Double pagePt = pageLocation(h);
+            if (pagePt == null
+                    || pagePt.distance(newPage) > OVERLAP_DISTANCE) {
+                continue;
+            }
+
+            // Two or more handles are in the same place,
+            // so do nitpicky stuff to get the
+            // parameterization right. If there's only one
+            // parameterizable handle, use it. If there
+            // are two or more, use neither of them,
+            // because it's ambiguous.
+
+            if (h instanceof BoundedParameterizable2D) {
+                ++parameterizableCnt;
+                if (parameterizableCnt > 1) {
+                    // If there are two or more, use
+                    // neither, because it's ambiguous.
+                    res = new NullDecorationHandle(principalLocation(h));
+                    break;
+                } else {
+                    // If there's only one parameterizable
+                    // handle, use it.
+                    res = h;
+                }
+            }
         }
 
-        OffsetParam2D.DistanceIndex di
-            = OffsetParam2D.distance(params, pagePoint, 1e-6, 2000);
-        return new DecorationDistance(decs.get(di.index), di.distance, curves.get(di.index));
+        if (!keypointsOnly) {
+            if (res != null) {
+                // Subtract keyPointPixelDist (converted to page
+                // coordinates) from keyPointDist before comparing
+                // with curves, in order to express the preference for
+                // key points over curves when the mouse is close to
+                // both.
+                double keyPointPixelDist = 10;
+                pageDist -= keyPointPixelDist / scale;
+                ap.position = AutoPositionType.POINT;
+            }
+
+            // Only jump to the nearest curve if it is at
+            // least three times closer than pageDist.
+
+            DecorationDistance nc;
+            if (pageDist > 0
+                    && (nc = nearestCurve(pageCurves, temps, mousePage)) != null
+                    && pageDist > 3 * nc.distance.distance) {
+                ap.position = AutoPositionType.CURVE;
+                res = toHandle(nc);
+                newPage = nc.distance.point;
+                pageDist = nc.distance.distance;
+            }
+
+            // move the mouse
+            if (newPage == null
+                    || pageDist * scale > maxMovePixels) {
+                ap.position = AutoPositionType.NONE;
+                newPage = mousePage; // Leave the mouse where it is.
+                res = new NullDecorationHandle(mprin2);
+            }
+        }
+
+        if (res != null) {
+            int layer = getLayer(res.getDecoration());
+            if (layer == -1) {
+                // Don't return handles to temporary decorations!
+                return new NullDecorationHandle(principalLocation(res));
+            }
+        }
+
+        return res;
+    }
+
+    Interp2DHandle2 toHandle(DecorationDistance dist) {
+        double t = dist.distance.t;
+        return new Interp2DHandle2(
+                (Interp2DDecoration) dist.decoration,
+                dist.pageCurve.info(t),
+                standardPageToPrincipal.transform(
+                        dist.pageCurve.getLocation(t)));
     }
 
     /** Return a list of every decoration that is completely inside the selected region. */
@@ -2425,6 +2895,8 @@ public class Diagram extends Observable implements Printable {
         Shape region = isClosed ? pagePath.getShape() : null;
         BoundedParam2D param = pagePath.getParameterization();
         double maxDistance = pageMatchDistance();
+        PolylineIndex index = new PolylineIndex(
+                Collections.singletonList(param), pageCurvesTolerance());
 
         for (Decoration d: getDecorations()) {
             boolean inside = true;
@@ -2437,9 +2909,9 @@ public class Diagram extends Observable implements Printable {
                 if (!inside) {
                     // Check if the point is very close to the path
                     // border.
-                    CurveDistanceRange cdr = param.distance(
+                    OffsetParam2D.DistanceIndex di = index.distance(
                             page, maxDistance, 1000);
-                    inside = cdr != null && cdr.distance <= maxDistance * 2;
+                    inside = di != null && di.distance.distance <= maxDistance * 2;
                 }
                 if (!inside) {
                     break;
@@ -2744,12 +3216,26 @@ public class Diagram extends Observable implements Printable {
         return 0;
     }
 
+    /** Load a PED file in JSON, Smile, or PEDContainer format.
+        Embedded images in the JSON and PEDContainer formats are not
+        read until they are needed; see DeferredImageBytes. */
     static Diagram loadFrom(File file) throws IOException {
         Diagram res;
+        Path path = file.toPath();
 
         try {
-            ObjectMapper mapper = getObjectMapper();
-            res = (Diagram) mapper.readValue(file, Diagram.class);
+            byte[] prefix = readPrefix(path, 4);
+            if (PEDContainer.isContainer(prefix)) {
+                res = PEDContainer.loadFrom(path);
+            } else if (isSmile(prefix)) {
+                res = getSmileDiagramReader().readValue(file);
+            } else {
+                DeferredImageBytes.Source source
+                    = new DeferredImageBytes.Source(path, false);
+                res = getDiagramReader()
+                    .withAttribute(DeferredImageBytes.FILE_ATTRIBUTE, source)
+                    .readValue(file);
+            }
         } catch (Exception e) {
             throw new IOException("File load error: " + e);
         }
@@ -2759,12 +3245,40 @@ public class Diagram extends Observable implements Printable {
         return res;
     }
 
+    /** Like loadFrom(File), but parse contents, which holds the
+        contents of path, such as a memory-mapped copy of it. */
+    static Diagram loadFrom(Path path, ByteBuffer contents) throws IOException {
+        Diagram res;
+
+        try {
+            byte[] prefix = new byte[Math.min(4, contents.remaining())];
+            contents.duplicate().get(prefix);
+            InputStream is = new ByteBufferBackedInputStream(contents.duplicate());
+            if (PEDContainer.isContainer(prefix)) {
+                res = PEDContainer.loadFrom(path);
+            } else if (isSmile(prefix)) {
+                res = getSmileDiagramReader().readValue(is);
+            } else {
+                DeferredImageBytes.Source source
+                    = new DeferredImageBytes.Source(path, false);
+                res = getDiagramReader()
+                    .withAttribute(DeferredImageBytes.FILE_ATTRIBUTE, source)
+                    .readValue(is);
+            }
+        } catch (Exception e) {
+            throw new IOException("File load error: " + e);
+        }
+
+        res.setFilename(path.toAbsolutePath().toString());
+        res.finishDeserialization();
+        return res;
+    }
+
     static Diagram loadFrom(String jsonString) throws IOException {
         Diagram res;
 
         try {
-            ObjectMapper mapper = getObjectMapper();
-            res = (Diagram) mapper.readValue(jsonString, Diagram.class);
+            res = getDiagramReader().readValue(jsonString);
         } catch (Exception e) {
             throw new IOException("File load error: " + e);
         }
@@ -2777,8 +3291,7 @@ public class Diagram extends Observable implements Printable {
         Diagram res;
 
         try {
-            ObjectMapper mapper = getObjectMapper();
-            res = (Diagram) mapper.readValue(is, Diagram.class);
+            res = getDiagramReader().readValue(is);
         } catch (Exception e) {
             throw new IOException("File load error: " + e);
         }
@@ -2821,9 +3334,16 @@ public class Diagram extends Observable implements Printable {
         if (pageBounds == null) {
             computeMargins();
         }
+        removeBrokenImages();
+    }
+
+    /** Remove leading images that cannot be decoded. */
+    void removeBrokenImages() {
         while (true) {
             SourceImage image = firstImage();
-            if (image != null && image.getImage() == null) {
+            // Don't load deferred images just to check them.
+            if (image != null && !image.isDeferred()
+                && image.getImage() == null) {
                 removeDecoration(image);
             } else {
                 break;
@@ -2831,6 +3351,19 @@ public class Diagram extends Observable implements Printable {
         }
     }
 
+    /** Replace the decoration list with ds, to which
+        finishDeserialization(ds) must already have been applied. This
+        is the equivalent of copyFrom() for a diagram that only
+        differs from this one in its decorations. Everything else
+        that copyFrom() and finishDeserialization() set up depends
+        only on the properties that are unchanged, except for the
+        check for broken images, which is repeated here. */
+    void setDecorations(ArrayList<Decoration> ds) {
+        decorations = ds;
+        removeBrokenImages();
+        propagateChange();
+    }
+
     /** Invoked from the EditFrame menu */
     public void openDiagram(File file) throws IOException {
         copyFrom(loadFrom(file));
@@ -3065,6 +3598,18 @@ public class Diagram extends Observable implements Printable {
         ImageIO.write(save, format, file);
     }
 
+    /** Read the bytes of any images that were deferred when this
+        diagram was loaded.
+
+        @throws IOException if any of them cannot be read. */
+    void readDeferredImages() throws IOException {
+        for (Decoration d: decorations) {
+            if (d instanceof SourceImage) {
+                ((SourceImage) d).readStoredImage();
+            }
+        }
+    }
+
     /** Return true if the save was successful. */
     public boolean saveAsPED(Path path) throws IOException {
         return saveAsPED(path, true);
@@ -3083,12 +3628,26 @@ public class Diagram extends Observable implements Printable {
             return false;
         }
         String oldFilename = getFilename();
-        try (PrintWriter writer = new PrintWriter
-             (Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+        // Deferred images may refer to path, so read them before
+        // overwriting it.
+        readDeferredImages();
+        try {
             if (updateFilename) {
                 setFilename(path.toString());
             }
-            writer.print(toJsonString());
+            resetIds();
+            if (PEDContainer.isContainerPath(path)) {
+                PEDContainer.save(this, path);
+                return true;
+            }
+            // Write through a Writer rather than an OutputStream.
+            // Jackson's UTF-8 output escapes characters outside the
+            // Basic Multilingual Plane, which would change the file
+            // format.
+            try (Writer writer = Files.newBufferedWriter
+                 (path, StandardCharsets.UTF_8)) {
+                getPEDWriter().writeValue(writer, this);
+            }
             return true;
         } catch (IOException x) {
             if (updateFilename) {
@@ -3099,11 +3658,49 @@ public class Diagram extends Observable implements Printable {
         }
     }
 
+    /** @return a snapshot of this diagram's JSON representation
+        that writeSnapshot() can write from another thread while this
+        diagram continues to be modified. Taking the snapshot is much
+        cheaper than toJsonString(), because formatting numbers,
+        encoding image bytes, indenting, and writing are all left to
+        writeSnapshot(). */
+    TokenBuffer jsonSnapshot() throws IOException {
+        resetIds();
+        ObjectMapper mapper = getObjectMapper();
+        TokenBuffer res = new TokenBuffer(mapper, false);
+        mapper.writeValue(res, this);
+        return res;
+    }
+
+    /** Write a jsonSnapshot() to path in Smile format, which
+        loadFrom(File) also accepts. The output goes to a temporary
+        file in the same directory that is then moved into place, so
+        path never holds a partially written file. */
+    static void writeSnapshot(TokenBuffer snapshot, Path path)
+        throws IOException {
+        Path dir = path.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(dir, path.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream os = new BufferedOutputStream
+                 (Files.newOutputStream(temp))) {
+                getSmileWriter().writeValue(os, snapshot);
+            }
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException x) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
     /** @return this diagram as a JSON string. */
     @Override public String toString() {
 
         try {
-            return Tabify.tabify(getObjectMapper().writeValueAsString(this));
+            return getPEDWriter().writeValueAsString(this);
         } catch (IOException e) {
             return super.toString();
         }
@@ -3112,7 +3709,7 @@ public class Diagram extends Observable implements Printable {
     /** @return this diagram as a JSON string. */
     public String toJsonString() throws IOException {
         resetIds();
-        return Tabify.tabify(getObjectMapper().writeValueAsString(this));
+        return getPEDWriter().writeValueAsString(this);
     }
 
     /** Reset IDs to be 1, 2, 3, etc. This allows a canonical representation of this diagram. */
@@ -3127,8 +3724,7 @@ public class Diagram extends Observable implements Printable {
 
     static DecorationsAndHandle jsonStringToDecorations(String str) throws IOException {
         try {
-            ObjectMapper mapper = getObjectMapper();
-            return mapper.readValue(str, DecorationsAndHandle.class);
+            return JsonMappers.DECORATIONS_READER.readValue(str);
         } catch (Exception e) {
             throw new IOException("Parse error: " + e);
         }
@@ -3947,7 +4543,13 @@ public class Diagram extends Observable implements Printable {
     }
 
     static ObjectMapper computeObjectMapper() {
-        ObjectMapper map = new ObjectMapper();
+        return computeObjectMapper(new JsonFactory());
+    }
+
+    /** @return a mapper for Diagrams that reads and writes the
+        format of the given factory. */
+    static ObjectMapper computeObjectMapper(JsonFactory factory) {
+        ObjectMapper map = new ObjectMapper(factory);
         map.configure(SerializationFeature.INDENT_OUTPUT, true);
         map.setSerializationInclusion(JsonInclude.Include.NON_NULL);
 
@@ -3964,12 +4566,123 @@ public class Diagram extends Observable implements Printable {
         return map;
     }
 
+    /** Shared JSON mapper, readers, and writers. The JVM initializes
+        this holder class on first use without races, and mappers,
+        readers, and writers are safe to share between threads once
+        they are configured. Building a reader or writer once instead
+        of on every call also saves redoing the type lookups. */
+    private static class JsonMappers {
+        static final ObjectMapper MAPPER = computeObjectMapper();
+        static final ObjectReader DIAGRAM_READER = MAPPER.readerFor(Diagram.class);
+        static final ObjectReader DECORATIONS_READER
+            = MAPPER.readerFor(DecorationsAndHandle.class);
+        static final ObjectWriter PED_WRITER = MAPPER.writer(Tabify.PRETTY_PRINTER);
+        static final ObjectWriter COMPACT_WRITER
+            = MAPPER.writer().without(SerializationFeature.INDENT_OUTPUT);
+    }
+
+    /** Like JsonMappers, for the Smile format. */
+    private static class SmileMappers {
+        static final ObjectMapper MAPPER = computeObjectMapper(createSmileFactory());
+        static {
+            MAPPER.configure(SerializationFeature.INDENT_OUTPUT, false);
+        }
+        static final ObjectReader DIAGRAM_READER = MAPPER.readerFor(Diagram.class);
+        static final ObjectWriter WRITER = MAPPER.writer();
+    }
+
     static ObjectMapper getObjectMapper() {
-        if (objectMapper == null) {
-            objectMapper = computeObjectMapper();
+        return JsonMappers.MAPPER;
+    }
+
+    /** @return a reader of Diagrams in JSON format. */
+    static ObjectReader getDiagramReader() {
+        return JsonMappers.DIAGRAM_READER;
+    }
+
+    /** @return a writer that produces unindented JSON. */
+    static ObjectWriter getCompactWriter() {
+        return JsonMappers.COMPACT_WRITER;
+    }
+
+    /** The classes whose serializers and deserializers
+        prepareMappers() resolves. */
+    static List<Class<?>> jsonClasses() {
+        ArrayList<Class<?>> res = new ArrayList<>();
+        res.add(Diagram.class);
+        res.add(DecorationsAndHandle.class);
+        for (Type t: DecorationAnnotations.class
+                 .getAnnotation(JsonSubTypes.class).value()) {
+            res.add(t.value());
+        }
+        return res;
+    }
+
+    /** Resolve map's serializers and deserializers for the classes
+        that make up a diagram. The mapper caches them, so this moves
+        most of the one-time cost of the first load and save, a few
+        hundred milliseconds, to whenever this is called. */
+    static void prepareMapper(ObjectMapper map) {
+        for (Class<?> c: jsonClasses()) {
+            map.readerFor(c);
+            map.writerFor(c);
         }
+    }
+
+    /** Call prepareMapper() on the mappers used to load, save, and
+        undo. This is meant to be run in the background at startup. */
+    static void prepareMappers() {
+        prepareMapper(getObjectMapper());
+        prepareMapper(EditorState.getObjectMapper());
+    }
+
+    /** Smile is a binary encoding of JSON that is about half the
+        size of compact JSON and faster to parse, mostly because
+        numbers are stored as binary values instead of decimal
+        strings. Image bytes are stored raw instead of in base64. */
+    static SmileFactory createSmileFactory() {
+        SmileFactory res = new SmileFactory();
+        res.disable(SmileGenerator.Feature.ENCODE_BINARY_AS_7BIT);
+        return res;
+    }
+
+    static ObjectMapper getSmileMapper() {
+        return SmileMappers.MAPPER;
+    }
+
+    /** @return a reader of Diagrams in Smile format. */
+    static ObjectReader getSmileDiagramReader() {
+        return SmileMappers.DIAGRAM_READER;
+    }
+
+    static ObjectWriter getSmileWriter() {
+        return SmileMappers.WRITER;
+    }
 
-        return objectMapper;
+    /** @return true if prefix starts with the Smile header. */
+    static boolean isSmile(byte[] prefix) {
+        return prefix.length >= 3
+            && prefix[0] == SmileConstants.HEADER_BYTE_1
+            && prefix[1] == SmileConstants.HEADER_BYTE_2
+            && prefix[2] == SmileConstants.HEADER_BYTE_3;
+    }
+
+    /** @return the first len bytes of file, or all of them if the
+        file is shorter. */
+    static byte[] readPrefix(Path file, int len) throws IOException {
+        byte[] res = new byte[len];
+        try (InputStream is = Files.newInputStream(file)) {
+            int cnt = 0;
+            for (int n; cnt < len && (n = is.read(res, cnt, len - cnt)) > 0; ) {
+                cnt += n;
+            }
+            return (cnt == len) ? res : Arrays.copyOf(res, cnt);
+        }
+    }
+
+    /** @return a writer that produces PED format output. */
+    static ObjectWriter getPEDWriter() {
+        return JsonMappers.PED_WRITER;
     }
 
     LinearRuler ternaryBottomRuler(double start /* Right */,
@@ -4224,6 +4937,30 @@ public class Diagram extends Observable implements Printable {
             : null;
     }
 
+    /** @return an arc length table for getStandardPageParameterization(obj),
+        or null if that is null. The most recent table is cached until
+        the next call to propagateChange1(). No caching is done while
+        updates are suppressed, because obj might have been changed
+        temporarily. */
+    ArcLengthTable arcLengthTable(Object obj) {
+        if (suppressUpdateCnt == 0 && arcLengthTable != null
+                && arcLengthTableObject == obj
+                && arcLengthTableChangeCount == changeCount) {
+            return arcLengthTable;
+        }
+        BoundedParam2D b = getStandardPageParameterization(obj);
+        if (b == null) {
+            return null;
+        }
+        ArcLengthTable res = new ArcLengthTable(b, 0, 1e-9);
+        if (suppressUpdateCnt == 0) {
+            arcLengthTable = res;
+            arcLengthTableObject = obj;
+            arcLengthTableChangeCount = changeCount;
+        }
+        return res;
+    }
+
     /** Return the parameterization of obj (which is probably a
         Decoration or DecorationHandle) in principal space if obj is
         an instance of BoundedParameterizable2D, or null otherwise. */
@@ -4336,7 +5073,7 @@ public class Diagram extends Observable implements Printable {
     }
 
     protected String toJsonString(DecorationsAndHandle wrap) throws IOException {
-        return Tabify.tabify(getObjectMapper().writeValueAsString(wrap));
+        return getPEDWriter().writeValueAsString(wrap);
     }
 
     double pageT(Interp2DHandle h) {
@@ -0,0 +1,88 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Compare the best-first BoundedParam2Ds.distance() against the
+    older level-order search, using the same queries that
+    Diagram.nearestCurve() makes, at random points on each diagram's
+    page, and check that both find the same distance to within
+    MAX_ERROR. */
+public class DistanceBenchmark {
+    static final int QUERY_CNT = 2000;
+    static final double MAX_ERROR = 1e-6;
+    static final int MAX_STEPS = 2000;
+
+    static class Result {
+        long steps = 0;
+        long nanos = 0;
+        double[] distances;
+    }
+
+    /** @param bestFirst If true, use distance(), or if false, use
+        levelOrderDistance(). */
+    static Result run(ArrayList<OffsetParam2D> params, Point2D.Double[] points,
+            boolean bestFirst) {
+        Result res = new Result();
+        res.distances = new double[points.length];
+        int[] stepCnt = new int[1];
+        for (int i = 0; i < points.length; ++i) {
+            long t0 = System.nanoTime();
+            CurveDistanceRange dist = bestFirst
+                ? BoundedParam2Ds.distance(
+                        params, points[i], MAX_ERROR, MAX_STEPS, stepCnt)
+                : BoundedParam2Ds.levelOrderDistance(
+                        params, points[i], MAX_ERROR, MAX_STEPS, stepCnt);
+            res.nanos += System.nanoTime() - t0;
+            res.steps += stepCnt[0];
+            res.distances[i] = dist.distance;
+        }
+        return res;
+    }
+
+    public static void main(String[] args) {
+        Benchmark.checkUsage(args, DistanceBenchmark.class, null);
+
+        // With the closed-form nearest point computation, most
+        // distance estimates are already exact, and neither search
+        // has anything to do.
+        CubicParam2D.useRootFinder = false;
+
+        Benchmark.Table table = new Benchmark.Table(
+                "%-28s %9d %9d %9.1f %9.1f %9.2g",
+                "File", "Old steps", "New steps", "Old ms", "New ms",
+                "Max diff");
+        for (String filename: args) {
+            Diagram d = Benchmark.load(filename);
+            if (d == null) {
+                continue;
+            }
+            ArrayList<OffsetParam2D> params
+                = OffsetParam2D.separate(d.pageCurves().params);
+            if (params.isEmpty()) {
+                continue;
+            }
+            Point2D.Double[] points = Benchmark.randomPagePoints(d, QUERY_CNT, 1);
+            List<Result> res = Benchmark.secondPass
+                (2, m -> run(params, points, m == 1));
+            Result oldRes = res.get(0);
+            Result newRes = res.get(1);
+
+            double maxDiff = 0;
+            for (int i = 0; i < points.length; ++i) {
+                maxDiff = Math.max(maxDiff,
+                        Math.abs(oldRes.distances[i] - newRes.distances[i]));
+            }
+            table.row(Benchmark.name(filename), oldRes.steps, newRes.steps,
+                    Benchmark.millis(oldRes.nanos),
+                    Benchmark.millis(newRes.nanos), maxDiff);
+            Benchmark.check(maxDiff <= MAX_ERROR,
+                    "%s: distances differ by %g", filename, maxDiff);
+        }
+        Benchmark.finish();
+    }
+}
@@ -0,0 +1,18 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.util.function.DoubleUnaryOperator;
+
+/** DoubleUnaryOperator that can also evaluate a whole set of
+    arguments in one call. Quadrature rules use this to evaluate all
+    of their nodes at once. */
+public interface DoubleBatchOperator extends DoubleUnaryOperator {
+    /** Set out[i] = applyAsDouble(xs[i]) for every i. */
+    default void applyAsDouble(double[] xs, double[] out) {
+        for (int i = 0; i < xs.length; ++i) {
+            out[i] = applyAsDouble(xs[i]);
+        }
+    }
+}
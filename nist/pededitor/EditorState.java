@@ -5,13 +5,22 @@ package gov.nist.pededitor;
 
 import java.awt.geom.Point2D;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
 /** Stuff to help temporary storage of diagram state for do/undo. */
 class EditorState {
@@ -37,58 +46,99 @@ class EditorState {
         }
     }
 
-    static class StringAndTransientState {
-        String str;
+    /** An undo stack entry. The diagram is stored in Smile format
+        (see Diagram.createSmileFactory()) as everything except its
+        decorations, plus one Smile value per decoration. Values that
+        are unchanged from the previous entry are shared with it
+        instead of being copied, so an entry only costs as much memory
+        as the decorations that changed, and switching between
+        adjacent entries only requires deserializing those
+        decorations. */
+    static class StoredState {
+        /** The diagram with an empty decorations list. */
+        byte[] header;
+        byte[][] decorations;
+        /** The images that decorations refer to by ImageStore key.
+            Holding them here keeps the store from discarding them. */
+        ImageStore.Entry[] images;
         TransientState trans;
-    }
+        /** Number of bytes not shared with the previous entry. */
+        int size;
+        /** The editor's version when the editor's diagram was last
+            known to match this entry, or -1. */
+        long version = -1;
 
-    /**
-     * After verifying that the hash codes match, copy the image bytes
-     * from src to dest. This is a space saving measure, since storing
-     * a multi-megabyte file with every copy would be expensive. */
-    static void copyImagesBetween(Diagram src, Diagram dest) throws IOException {
-        List<Decoration> srcds = src.decorations;
-        List<Decoration> destds = dest.decorations;
-        int srcIndex = 0;
-        for (int destIndex = 0; destIndex < destds.size(); ++destIndex) {
-            if (destds.get(destIndex) instanceof SourceImage) {
-                SourceImage destImage = (SourceImage) destds.get(destIndex);
-                for (;; ++srcIndex) {
-                    if (srcIndex >= srcds.size()) {
-                        throw new ImageMismatchException();
-                    }
-                    if (srcds.get(srcIndex) instanceof SourceImage) {
-                        SourceImage srcImage = (SourceImage) srcds.get(srcIndex);
-                        if (destImage.bytesHashCode != srcImage.bytesHashCode()) {
-                            throw new IOException("Src/dest Images bytes hash code mismatch");
+        /** Replace values that equal values in prev with prev's
+            copies, and recompute size. prev may be null. */
+        void share(StoredState prev) {
+            size = 0;
+            if (prev != null && Arrays.equals(header, prev.header)) {
+                header = prev.header;
+            } else {
+                size += header.length;
+            }
+            HashMap<ByteBuffer, byte[]> old = null;
+            for (int i = 0; i < decorations.length; ++i) {
+                byte[] s = decorations[i];
+                if (prev != null && i < prev.decorations.length
+                    && Arrays.equals(s, prev.decorations[i])) {
+                    decorations[i] = prev.decorations[i];
+                    continue;
+                }
+                if (old == null) {
+                    old = new HashMap<>();
+                    if (prev != null) {
+                        for (byte[] ps: prev.decorations) {
+                            old.put(ByteBuffer.wrap(ps), ps);
                         }
-                        destImage.bytes = srcImage.bytes;
-                        ++srcIndex;
-                        break;
                     }
                 }
+                byte[] ps = old.get(ByteBuffer.wrap(s));
+                if (ps != null) {
+                    decorations[i] = ps;
+                } else {
+                    size += s.length;
+                }
+            }
+            // An image that prev does not hold may be held by this
+            // entry alone.
+            for (ImageStore.Entry image: images) {
+                if (prev == null || !Arrays.asList(prev.images).contains(image)) {
+                    size += image.bytes.length;
+                }
             }
         }
-        for (; srcIndex < srcds.size(); ++srcIndex) {
-            if (srcds.get(srcIndex) instanceof SourceImage) {
-                throw new ImageMismatchException();
+
+        /** @return true if this and other store the same diagram,
+            ignoring the transient state. */
+        boolean sameDiagram(StoredState other) {
+            return Arrays.equals(header, other.header)
+                && Arrays.deepEquals(decorations, other.decorations);
+        }
+
+        /** Cached value of diagramHashCode(), or 0 if not computed. */
+        private int hash = 0;
+
+        int diagramHashCode() {
+            if (hash == 0) {
+                hash = Arrays.hashCode(header) * 31
+                    + Arrays.deepHashCode(decorations);
             }
+            return hash;
         }
     }
 
     void copyTo(BasicEditor target) throws IOException {
-        copyImagesBetween(target, this.diagram);
         DecorationsAndHandle wrap = new DecorationsAndHandle();
         wrap.decorations = diagram.decorations;
         wrap.decorationNum = trans.selectionDecorationNum;
         wrap.handleNum = trans.selectionHandleNum;
         DecorationHandle sel = wrap.createHandle();
 
-        // Preserve the target's undo stack and save hashes.
+        // Preserve the target's undo stack and save hash.
         int undoStackOffset = target.undoStackOffset;
         int lastSaveHashCode = target.lastSaveHashCode;
-        int autoSaveHashCode = target.autoSaveHashCode;
-        ArrayList<EditorState.StringAndTransientState> undoStack
+        ArrayList<EditorState.StoredState> undoStack
             = target.undoStack;
         try {
             target.undoStack = new ArrayList<>();
@@ -96,7 +146,6 @@ class EditorState {
             target.setSelection(sel);
             target.revalidateZoomFrame();
             target.lastSaveHashCode = lastSaveHashCode;
-            target.autoSaveHashCode = autoSaveHashCode;
             // Restoring mprin and scale seems to be finicky.
             // setScale() works, but it's worse than useless if the
             // mouse is zoomed to the wrong spot.
@@ -110,17 +159,33 @@ class EditorState {
         }
     }
 
-    public StringAndTransientState toStringAndTransientState()
-        throws IOException {
-        StringAndTransientState res = new StringAndTransientState();
-        res.str = getObjectMapper().writeValueAsString(diagram);
+    public StoredState toStoredState() throws IOException {
+        ObjectNode tree = getObjectMapper().valueToTree(diagram);
+        ObjectWriter writer = Mappers.WRITER;
+        StoredState res = new StoredState();
+        JsonNode ds = tree.get("decorations");
+        res.decorations = new byte[(ds == null) ? 0 : ds.size()][];
+        for (int i = 0; i < res.decorations.length; ++i) {
+            res.decorations[i] = writer.writeValueAsBytes(ds.get(i));
+        }
+        tree.putArray("decorations");
+        res.header = writer.writeValueAsBytes(tree);
+        ArrayList<ImageStore.Entry> images = new ArrayList<>();
+        for (SourceImage image: diagram.images()) {
+            ImageStore.Entry e = image.storedImage();
+            if (e != null) {
+                images.add(e);
+            }
+        }
+        res.images = images.toArray(new ImageStore.Entry[0]);
         res.trans = trans.clone();
+        res.share(null);
         return res;
     }
 
-    /** @return this diagram as a JSON string. */
-    public static StringAndTransientState toStringAndTransientState(
-            BasicEditor editor) throws IOException {
+    /** @return this diagram as a StoredState. */
+    public static StoredState toStoredState(BasicEditor editor)
+        throws IOException {
         editor.resetIds();
         EditorState res = new EditorState();
         DecorationsAndHandle wrap = new DecorationsAndHandle();
@@ -132,16 +197,23 @@ class EditorState {
         res.trans.selectionHandleNum = wrap.handleNum;
         res.trans.mprin = clone(editor.mprin);
         res.trans.scale = editor.scale;
-        return res.toStringAndTransientState();
+        return res.toStoredState();
     }
 
-    static EditorState loadFrom(StringAndTransientState sas) throws IOException {
+    static EditorState loadFrom(StoredState state) throws IOException {
         EditorState res = new EditorState();
 
         try {
-            ObjectMapper mapper = getObjectMapper();
-            res.diagram = (Diagram) mapper.readValue(sas.str, Diagram.class);
-            res.trans = sas.trans.clone();
+            ObjectReader reader = Mappers.TREE_READER;
+            ObjectNode tree = reader.readValue(state.header);
+            // putArray() replaces the empty list in place, so the
+            // property order is unchanged.
+            ArrayNode ds = tree.putArray("decorations");
+            for (byte[] s: state.decorations) {
+                ds.add(reader.<JsonNode>readValue(s));
+            }
+            res.diagram = Mappers.DIAGRAM_READER.readValue(tree);
+            res.trans = state.trans.clone();
         } catch (Exception e) {
             throw new IOException("String parse error: " + e);
         }
@@ -150,33 +222,121 @@ class EditorState {
         return res;
     }
 
-    static void copyToEditor(BasicEditor editor, StringAndTransientState sas) throws IOException {
+    static void copyToEditor(BasicEditor editor, StoredState state) throws IOException {
         String filename = editor.getFilename();
-        loadFrom(sas).copyTo(editor);
+        loadFrom(state).copyTo(editor);
         editor.setFilename(filename);
     }
 
-    static ObjectMapper objectMapper = null;
-    static ObjectMapper getObjectMapper() {
-        if (objectMapper == null) {
-            objectMapper = Diagram.computeObjectMapper();
-            objectMapper.configure(SerializationFeature.INDENT_OUTPUT, false);
-            objectMapper.addMixIn(SourceImage.class, SourceImageHashAnnotations.class);
+    /** Change the editor's diagram from current, which must describe
+        the editor's present state, to target. If only the decorations
+        differ, then decorations whose serialization is unchanged are
+        kept, and only the rest are deserialized. Otherwise, the whole
+        diagram is reloaded.
+
+        @param current The editor's current state, or null to compute
+        it. */
+    static void copyToEditor(BasicEditor editor, StoredState current,
+            StoredState target) throws IOException {
+        if (current == null) {
+            current = toStoredState(editor);
+        }
+        if (!Arrays.equals(current.header, target.header)
+            || !copyDecorationsToEditor(editor, current, target)) {
+            copyToEditor(editor, target);
         }
-        return objectMapper;
     }
 
-    @SuppressWarnings("serial")
-    static class ImageMismatchException extends IOException {
-        ImageMismatchException() {
-            super("Src/dest image count mismatch");
+    /** Helper for copyToEditor(). Return false without modifying
+        the editor if the full reload is required. */
+    private static boolean copyDecorationsToEditor(BasicEditor editor,
+            StoredState current, StoredState target) throws IOException {
+        ArrayList<Decoration> ds = targetDecorations(editor, current, target);
+        if (ds == null) {
+            return false;
         }
+
+        editor.clearSelection();
+        editor.setDecorations(ds);
+
+        DecorationsAndHandle wrap = new DecorationsAndHandle();
+        wrap.decorations = editor.decorations;
+        wrap.decorationNum = target.trans.selectionDecorationNum;
+        wrap.handleNum = target.trans.selectionHandleNum;
+        editor.setSelection(wrap.createHandle());
+        return true;
     }
+
+    /** @return the decoration list for target, reusing the
+        decorations of diagram whose serialization is unchanged, or null if
+        the full reload is required. diagram's current state must
+        match current. diagram's decoration list is not modified, but
+        reused tie lines and rulers are relinked to the decorations in
+        the new list. */
+    static ArrayList<Decoration> targetDecorations(Diagram diagram,
+            StoredState current, StoredState target) throws IOException {
+        List<Decoration> oldds = diagram.decorations;
+        if (oldds.size() != current.decorations.length) {
+            return null;
+        }
+        HashMap<ByteBuffer, ArrayDeque<Decoration>> unchanged = new HashMap<>();
+        for (int i = 0; i < oldds.size(); ++i) {
+            unchanged.computeIfAbsent(ByteBuffer.wrap(current.decorations[i]),
+                    k -> new ArrayDeque<>()).add(oldds.get(i));
+        }
+
+        ObjectReader reader = Mappers.DECORATION_READER;
+        ArrayList<Decoration> ds = new ArrayList<>(target.decorations.length);
+        for (byte[] s: target.decorations) {
+            ArrayDeque<Decoration> q = unchanged.get(ByteBuffer.wrap(s));
+            Decoration d = (q == null) ? null : q.poll();
+            if (d == null) {
+                try {
+                    d = reader.readValue(s);
+                } catch (Exception e) {
+                    throw new IOException("String parse error: " + e);
+                }
+            } else if (d instanceof TieLine) {
+                // Relink the tie line below, in case its edges are
+                // among the decorations that are being replaced.
+                TieLine tie = (TieLine) d;
+                tie.innerId = tie.getInnerId();
+                tie.outerId = tie.getOuterId();
+            }
+            ds.add(d);
+        }
+        diagram.finishDeserialization(ds);
+        return ds;
+    }
+
+    /** Undo stack mapper, readers, and writer; see
+        Diagram.JsonMappers. */
+    private static class Mappers {
+        static final ObjectMapper MAPPER = Diagram.computeObjectMapper
+            (Diagram.createSmileFactory());
+        static {
+            MAPPER.configure(SerializationFeature.INDENT_OUTPUT, false);
+            MAPPER.addMixIn(SourceImage.class, SourceImageKeyAnnotations.class);
+        }
+        static final ObjectReader TREE_READER = MAPPER.readerFor(JsonNode.class);
+        static final ObjectReader DIAGRAM_READER = MAPPER.readerFor(Diagram.class);
+        static final ObjectReader DECORATION_READER = MAPPER.readerFor(Decoration.class);
+        static final ObjectWriter WRITER = MAPPER.writer();
+    }
+
+    static ObjectMapper getObjectMapper() {
+        return Mappers.MAPPER;
+    }
+
 }
 
-/** Tweak the serialization of SourceImage to substitute a hash code for the actual bytes. */
-abstract class SourceImageHashAnnotations extends SourceImage {
-    @Override @JsonProperty("bytesHashCode") int bytesHashCode() { return 0; }
+/** Tweak the serialization of SourceImage to substitute an
+    ImageStore key for the actual bytes. */
+abstract class SourceImageKeyAnnotations extends SourceImage {
     @Override @JsonIgnore protected byte[] getBytesUnsafe() { return null; }
-    @Override @JsonIgnore protected void setBytesUnsafe(byte[] bytes) { }
+    @Override @JsonIgnore protected void setJSONBytes(DeferredImageBytes b) { }
+    @Override @JsonIgnore(false) @JsonProperty("imageKey")
+    String getImageKey() { return null; }
+    @Override @JsonIgnore(false) @JsonProperty("imageKey")
+    void setImageKey(String key) { }
 }
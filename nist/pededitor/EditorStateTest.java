@@ -0,0 +1,106 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.awt.Color;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/** Check that restoring an undo state by replacing only the changed
+    decorations, as EditorState.copyToEditor() does when it can,
+    yields the same diagram as reloading the whole state. Each PED
+    file named on the command line is edited in several ways, and the
+    before and after states are each restored from the other. Exits
+    with status 1 if any check fails. */
+public class EditorStateTest {
+    static int failures = 0;
+
+    static void check(boolean ok, String format, Object... args) {
+        if (!ok) {
+            ++failures;
+            System.err.println("FAILED: " + String.format(format, args));
+        }
+    }
+
+    static EditorState.StoredState store(Diagram d) throws IOException {
+        d.resetIds();
+        EditorState es = new EditorState();
+        es.diagram = d;
+        es.trans = new EditorState.TransientState();
+        return es.toStoredState();
+    }
+
+    /** Move a vertex, recolor a decoration, delete the last
+        decoration, and insert a shifted copy of a curve at the
+        front. */
+    static void edit(Diagram d) {
+        Interp2DDecoration curve = null;
+        for (Decoration dec: d.getDecorations()) {
+            if (dec instanceof Interp2DDecoration && !(dec instanceof TieLine)
+                && ((Interp2DDecoration) dec).getCurve().size() > 0) {
+                curve = (Interp2DDecoration) dec;
+                break;
+            }
+        }
+        if (curve != null) {
+            Interp2D c = curve.getCurve();
+            Point2D.Double p = c.get(0);
+            c.set(0, new Point2D.Double(p.x + 0.01, p.y + 0.02));
+            d.addDecoration(0, curve.createTransformed(
+                            AffineTransform.getTranslateInstance(0.03, 0)));
+        }
+        int cnt = d.getDecorations().size();
+        if (cnt > 1) {
+            d.getDecorations().get(cnt / 2).setColor(new Color(0x123456));
+            d.removeDecoration(cnt - 1);
+        }
+    }
+
+    /** Restore to from from, both ways, and compare the results. */
+    static void checkRestore(String name, EditorState.StoredState from,
+            EditorState.StoredState to) throws IOException {
+        check(Arrays.equals(from.header, to.header),
+                "%s: the edits changed more than the decorations", name);
+        Diagram d = EditorState.loadFrom(from).diagram;
+        ArrayList<Decoration> ds
+            = EditorState.targetDecorations(d, from, to);
+        check(ds != null, "%s: delta restore refused", name);
+        if (ds == null) {
+            return;
+        }
+        d.setDecorations(ds);
+        String delta = d.toJsonString();
+        String full = EditorState.loadFrom(to).diagram.toJsonString();
+        check(delta.equals(full),
+                "%s: delta restore differs from a full reload", name);
+        check(store(d).sameDiagram(to),
+                "%s: delta restore does not match the undo state", name);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Benchmark.checkUsage(args, EditorStateTest.class, null);
+        for (String filename: args) {
+            Diagram d = Benchmark.load(filename);
+            if (d == null) {
+                continue;
+            }
+            String name = Benchmark.name(filename);
+            EditorState.StoredState before = store(d);
+            edit(d);
+            EditorState.StoredState after = store(d);
+            check(!before.sameDiagram(after), "%s: the edits did nothing", name);
+            after.share(before);
+            checkRestore(name + " redo", before, after);
+            checkRestore(name + " undo", after, before);
+        }
+        if (failures > 0) {
+            System.err.println(failures + " check(s) failed.");
+            System.exit(1);
+        }
+        System.out.println("All checks passed.");
+    }
+}
@@ -0,0 +1,85 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/** Compare the serialization time, deserialization time, and size
+    of diagrams in PED format, in compact JSON (the former undo stack
+    format), and in Smile format (the undo stack and autosave
+    format), and check that each format reads back the same diagram
+    that was written. */
+public class EncodingBenchmark {
+    /** Number of times each diagram is written and read per pass. */
+    static final int REPEAT = 20;
+
+    static class Result {
+        long writeNanos = 0;
+        long readNanos = 0;
+        int size;
+        /** The diagram as read back. */
+        Diagram diagram;
+    }
+
+    static Result run(Diagram d, ObjectWriter writer, ObjectReader reader)
+        throws IOException {
+        Result res = new Result();
+        for (int i = 0; i < REPEAT; ++i) {
+            long t0 = System.nanoTime();
+            byte[] bytes = writer.writeValueAsBytes(d);
+            long t1 = System.nanoTime();
+            res.diagram = reader.readValue(bytes);
+            res.readNanos += System.nanoTime() - t1;
+            res.writeNanos += t1 - t0;
+            res.size = bytes.length;
+        }
+        return res;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Benchmark.checkUsage(args, EncodingBenchmark.class, null);
+
+        String[] names = { "PED", "Compact", "Smile" };
+        ObjectMapper compact = Diagram.computeObjectMapper();
+        compact.configure(SerializationFeature.INDENT_OUTPUT, false);
+        ObjectWriter[] writers = { Diagram.getPEDWriter(), compact.writer(),
+                                   Diagram.getSmileMapper().writer() };
+        ObjectReader[] readers = {
+            Diagram.getObjectMapper().readerFor(Diagram.class),
+            compact.readerFor(Diagram.class),
+            Diagram.getSmileMapper().readerFor(Diagram.class) };
+
+        Benchmark.Table table = new Benchmark.Table(
+                "%-28s %-8s %9.2f %9.2f %9d",
+                "File", "Format", "Write ms", "Read ms", "Bytes");
+        for (String filename: args) {
+            Diagram d = Benchmark.load(filename);
+            if (d == null) {
+                continue;
+            }
+            String name = Benchmark.name(filename);
+            String expected = d.toJsonString();
+            List<Result> results = Benchmark.secondPass
+                (names.length, m -> run(d, writers[m], readers[m]));
+
+            for (int i = 0; i < names.length; ++i) {
+                Result r = results.get(i);
+                table.row(name, names[i],
+                        Benchmark.millis(r.writeNanos) / REPEAT,
+                        Benchmark.millis(r.readNanos) / REPEAT, r.size);
+                r.diagram.finishDeserialization();
+                Benchmark.check(expected.equals(r.diagram.toJsonString()),
+                        "%s: %s round trip changed the diagram", filename,
+                        names[i]);
+            }
+        }
+        Benchmark.finish();
+    }
+}
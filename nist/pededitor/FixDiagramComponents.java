@@ -25,8 +25,11 @@ public class FixDiagramComponents {
             filename\tside\tdir1Component\tdir2Component
     */
     public static void compareAll(String dir1, String dir2, String dirOut) {
-        try {
-            for (String preFile: PEDToPDF.getInputFilenames(dir1)) {
+        try (BulkLoader loader
+             = new BulkLoader(PEDToPDF.getInputFilenames(dir1))) {
+            while (loader.hasNext()) {
+                BulkLoader.Result loaded = loader.next();
+                String preFile = loaded.filename;
                 String name = (new File(preFile)).getName();
                 String postFile = dir2 + "/" + name;
                 String outFile = null;
@@ -34,7 +37,8 @@ public class FixDiagramComponents {
                     outFile = dirOut + "/" + name;
                 }
                 try {
-                    compare(preFile, postFile, outFile);
+                    compare(PEDToPDF.fix(loaded.get(), preFile, true),
+                            preFile, postFile, outFile);
                 } catch (Exception x) {
                     System.out.println("In file " + preFile + ": " + x);
                 }
@@ -61,7 +65,13 @@ public class FixDiagramComponents {
         preFile to outFile. */
     public static void compare(String preFile, String postFile,
                                       String outFile) throws IOException {
-        Diagram dPre = PEDToPDF.loadAndFix(preFile, true);
+        compare(PEDToPDF.loadAndFix(preFile, true), preFile, postFile, outFile);
+    }
+
+    /** Like compare(preFile, postFile, outFile), but dPre is the
+        result of PEDToPDF.loadAndFix(preFile, true). */
+    static void compare(Diagram dPre, String preFile, String postFile,
+            String outFile) throws IOException {
         Diagram dPost = Diagram.loadFrom(new File(postFile));
         boolean different = false;
         for (Side side: Side.values()) {
@@ -0,0 +1,240 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.util.PriorityQueue;
+import java.util.function.DoubleUnaryOperator;
+
+/** Adaptive Gauss-Kronrod integration using the 7-point Gauss rule
+    and its 15-point Kronrod extension. The integration domain is
+    split into intervals, and the interval with the largest error
+    estimate is bisected until the total error estimate is small
+    enough.
+
+    The error estimate for each interval is the difference between
+    the 7-point and 15-point estimates. That is really a measure of
+    the error of the 7-point estimate, so for smooth functions the
+    15-point estimate that is returned is usually far more accurate
+    than the bounds indicate.
+
+    For smooth functions such as the speed of a Bezier curve, this
+    usually needs fewer function evaluations than Romberg integration
+    does to reach the same precision. */
+public class GaussKronrodIntegral {
+    /** Nonnegative 15-point Kronrod nodes on [-1, 1] in decreasing
+        order. The odd-numbered ones are also the 7-point Gauss
+        nodes. */
+    static final double[] NODES = {
+        0.991455371120812639206854697526329,
+        0.949107912342758524526189684047851,
+        0.864864423359769072789712788640926,
+        0.741531185599394439863864773280788,
+        0.586087235467691130294144845693013,
+        0.405845151377397166906606412076961,
+        0.207784955007898467600689403773245,
+        0.000000000000000000000000000000000 };
+
+    /** Kronrod weights corresponding to NODES. */
+    static final double[] KRONROD_WEIGHTS = {
+        0.022935322010529224963732008058970,
+        0.063092092629978553290700663189204,
+        0.104790010322250183839876322541518,
+        0.140653259715525918745189590510238,
+        0.169004726639267902826583426598550,
+        0.190350578064785409913256402421014,
+        0.204432940075298892414161999234649,
+        0.209482141084727828012999174891714 };
+
+    /** Gauss weights corresponding to NODES[1], NODES[3], NODES[5],
+        and NODES[7]. */
+    static final double[] GAUSS_WEIGHTS = {
+        0.129484966168869693270611432679082,
+        0.279705391489276667901467771423780,
+        0.381830050505118944950369775488975,
+        0.417959183673469387755102040816327 };
+
+    /** Number of function evaluations per interval. */
+    static final int RULE_SAMPLE_CNT = 15;
+
+    /** The result of applying the Gauss-Kronrod rule to one
+        interval. */
+    static class Interval implements Comparable<Interval> {
+        double lo;
+        double hi;
+        double value;
+        double error;
+
+        /** Intervals with larger errors come first. */
+        @Override public int compareTo(Interval other) {
+            return Double.compare(other.error, error);
+        }
+    }
+
+    DoubleUnaryOperator f;
+    double lo;
+    double hi;
+
+    public GaussKronrodIntegral(DoubleUnaryOperator f, double lo, double hi) {
+        this.f = f;
+        this.lo = lo;
+        this.hi = hi;
+    }
+
+    public DoubleUnaryOperator getFunction() {
+        return f;
+    }
+
+    public double getLowerLimit() {
+        return lo;
+    }
+
+    public double getUpperLimit() {
+        return hi;
+    }
+
+    /** Apply the 15-point Kronrod rule to f over [lo, hi]. xs and
+        fxs are scratch buffers of length RULE_SAMPLE_CNT. If f is a
+        DoubleBatchOperator, then all of the nodes are evaluated in
+        one call. */
+    static Interval rule(DoubleUnaryOperator f, double lo, double hi,
+            double[] xs, double[] fxs) {
+        double half = (hi - lo) / 2;
+        double center = (lo + hi) / 2;
+        xs[0] = center;
+        for (int i = 0; i < 7; ++i) {
+            double dx = half * NODES[i];
+            xs[2 * i + 1] = center - dx;
+            xs[2 * i + 2] = center + dx;
+        }
+        if (f instanceof DoubleBatchOperator) {
+            ((DoubleBatchOperator) f).applyAsDouble(xs, fxs);
+        } else {
+            for (int i = 0; i < RULE_SAMPLE_CNT; ++i) {
+                fxs[i] = f.applyAsDouble(xs[i]);
+            }
+        }
+
+        double fc = fxs[0];
+        double kronrod = fc * KRONROD_WEIGHTS[7];
+        double gauss = fc * GAUSS_WEIGHTS[3];
+        for (int i = 0; i < 7; ++i) {
+            double sum = fxs[2 * i + 1] + fxs[2 * i + 2];
+            kronrod += sum * KRONROD_WEIGHTS[i];
+            if ((i & 1) == 1) {
+                gauss += sum * GAUSS_WEIGHTS[i >> 1];
+            }
+        }
+        Interval res = new Interval();
+        res.lo = lo;
+        res.hi = hi;
+        res.value = kronrod * half;
+        res.error = Math.abs((kronrod - gauss) * half);
+        return res;
+    }
+
+    /** Compute the integral between the lower and upper limits to the
+        given precision. */
+    public NumericEstimate integral(Precision p) {
+        return integral(f, lo, hi, p);
+    }
+
+    /** Equivalent to {@link #integral(DoubleUnaryOperator, double, double,
+        Precision) integral(f, lo, hi, new Precision()) } */
+    public static NumericEstimate integral(DoubleUnaryOperator f,
+                                           double lo, double hi) {
+        return integral(f, lo, hi, new Precision());
+    }
+
+    /** Return the result of integrating the function f over the
+        domain [lo,hi]. This never returns null. If the status of the
+        result is not OK, then its value may not be accurate to the
+        requested precision.
+
+        @param lo One of the limits of the integration domain. If lo
+        &gt; hi then the result is the negative of the integral over
+        [hi, lo].
+
+        @param hi The other limit of the integration domain.
+
+        @param p Requested precision of the result.
+    */
+    public static NumericEstimate integral(DoubleUnaryOperator f,
+            double lo, double hi, Precision p) {
+        if (lo == hi) {
+            return new NumericEstimate(0);
+        }
+        if (lo > hi) {
+            NumericEstimate res = integral(f, hi, lo, p);
+            res.times(-1);
+            return res;
+        }
+
+        double[] xs = new double[RULE_SAMPLE_CNT];
+        double[] fxs = new double[RULE_SAMPLE_CNT];
+        PriorityQueue<Interval> intervals = new PriorityQueue<>();
+        Interval whole = rule(f, lo, hi, xs, fxs);
+        intervals.add(whole);
+        double value = whole.value;
+        double error = whole.error;
+        int sampleCnt = RULE_SAMPLE_CNT;
+        NumericEstimate.Status status = NumericEstimate.Status.OK;
+
+        while (sampleCnt < p.minSampleCnt || error > p.maxError(value)) {
+            if (sampleCnt + 2 * RULE_SAMPLE_CNT > p.maxSampleCnt
+                && sampleCnt >= p.minSampleCnt) {
+                status = NumericEstimate.Status.TOO_MANY_STEPS;
+                break;
+            }
+            Interval worst = intervals.poll();
+            double mid = (worst.lo + worst.hi) / 2;
+            if (mid <= worst.lo || mid >= worst.hi) {
+                intervals.add(worst);
+                status = NumericEstimate.Status.TOO_SMALL_STEP_SIZE;
+                break;
+            }
+            Interval left = rule(f, worst.lo, mid, xs, fxs);
+            Interval right = rule(f, mid, worst.hi, xs, fxs);
+            sampleCnt += 2 * RULE_SAMPLE_CNT;
+            intervals.add(left);
+            intervals.add(right);
+
+            // Recompute the totals from scratch instead of
+            // incrementally, so that roundoff error in the error
+            // total cannot accumulate.
+            value = 0;
+            error = 0;
+            for (Interval i: intervals) {
+                value += i.value;
+                error += i.error;
+            }
+        }
+
+        NumericEstimate res = new NumericEstimate(value);
+        res.lowerBound = value - error;
+        res.upperBound = value + error;
+        res.sampleCnt = sampleCnt;
+        res.status = status;
+        return res;
+    }
+
+    public static void main(String[] args) {
+        Precision p = new Precision();
+        p.relativeError = 1e-10;
+        p.absoluteError = 1e-16;
+
+        DoubleUnaryOperator quad = x -> 1 + 5 * x + 2 * x* x;
+        System.out.println(integral(quad, 0, 10, p));
+
+        DoubleUnaryOperator gaussian =
+            x -> Math.exp(-x*x/2)/Math.sqrt(2 * 3.14159265358979);
+        NumericEstimate est = integral(gaussian, 0, 10, p);
+        System.out.println(est);
+        boolean ok = Math.abs(0.5 - est.value) < 1e-10;
+        System.out.println("Test result: " + (ok ? "OK" : "FAILED"));
+
+        DoubleUnaryOperator sqrt = x -> Math.sqrt(x);
+        est = integral(sqrt, 0, 1, p);
+        System.out.println(est + " (expected " + 2.0/3 + ")");
+    }
+}
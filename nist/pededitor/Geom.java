@@ -103,6 +103,20 @@ public class Geom {
         return output;
     }
 
+    /** @return the coordinates of points packed into one array as
+        x0, y0, x1, y1, ..., the layout that
+        AffineTransform.transform(double[], int, double[], int, int)
+        and the other bulk coordinate conversions use. */
+    public static double[] toCoordinates(Collection<? extends Point2D> points) {
+        double[] output = new double[points.size() * 2];
+        int i = 0;
+        for (Point2D p: points) {
+            output[i++] = p.getX();
+            output[i++] = p.getY();
+        }
+        return output;
+    }
+
     public static <T extends Point2D> double minX(T[] points) {
         double rv = points[0].getX();
         for (int i = 1; i < points.length; ++i) {
@@ -0,0 +1,119 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+
+import javax.imageio.ImageIO;
+
+/** Process-wide store of image file contents, addressed by their
+    SHA-256 hash. Identical images in different editors, undo states,
+    and pasted copies all share one Entry, so the bytes are stored
+    once, hashed once, and decoded at most once at a time.
+
+    The store only holds weak references to entries, so an entry
+    lasts only as long as a SourceImage or an undo state refers to
+    it. */
+class ImageStore {
+    /** Image file contents and their decoded image. */
+    static class Entry {
+        /** Lowercase hex SHA-256 hash of bytes. */
+        final String key;
+        /** Changing the array contents is not safe. */
+        final byte[] bytes;
+        /** The decoded image, which is weakly referenced so that the
+            pixels are freed when no SourceImage is using them, even
+            if an undo state still refers to this entry. */
+        private WeakReference<BufferedImage> image = null;
+
+        Entry(String key, byte[] bytes) {
+            this.key = key;
+            this.bytes = bytes;
+        }
+
+        /** @return the decoded image, or null if ImageIO does not
+            recognize the format. */
+        synchronized BufferedImage getImage() throws IOException {
+            BufferedImage res = (image == null) ? null : image.get();
+            if (res == null) {
+                res = ImageIO.read(new ByteArrayInputStream(bytes));
+                image = (res == null) ? null : new WeakReference<>(res);
+            }
+            return res;
+        }
+    }
+
+    /** A weak reference that remembers its key, so that it can be
+        removed from entries after it is cleared. */
+    static class KeyedReference extends WeakReference<Entry> {
+        final String key;
+
+        KeyedReference(Entry entry, ReferenceQueue<Entry> queue) {
+            super(entry, queue);
+            key = entry.key;
+        }
+    }
+
+    private static final HashMap<String, KeyedReference> entries = new HashMap<>();
+    private static final ReferenceQueue<Entry> cleared = new ReferenceQueue<>();
+
+    /** @return the lowercase hex SHA-256 hash of bytes. */
+    static String key(byte[] bytes) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder sb = new StringBuilder();
+            for (byte b: hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16))
+                    .append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException x) {
+            throw new IllegalStateException(x);
+        }
+    }
+
+    /** @return the entry for the given contents, adding it if it is
+        not already present. The caller must not modify bytes
+        afterwards. */
+    static Entry intern(byte[] bytes) {
+        return intern(key(bytes), bytes);
+    }
+
+    /** Like intern(bytes), for callers that have already computed
+        key, which must equal key(bytes). */
+    static Entry intern(String key, byte[] bytes) {
+        synchronized (entries) {
+            Entry res = get(key);
+            if (res == null) {
+                res = new Entry(key, bytes);
+                entries.put(key, new KeyedReference(res, cleared));
+            }
+            return res;
+        }
+    }
+
+    /** @return the entry with the given key, or null if there is
+        none. */
+    static Entry get(String key) {
+        synchronized (entries) {
+            for (Reference<? extends Entry> r; (r = cleared.poll()) != null; ) {
+                KeyedReference kr = (KeyedReference) r;
+                // The key may have been re-added since kr was cleared.
+                if (entries.get(kr.key) == kr) {
+                    entries.remove(kr.key);
+                }
+            }
+            KeyedReference r = entries.get(key);
+            return (r == null) ? null : r.get();
+        }
+    }
+}
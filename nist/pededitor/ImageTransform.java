@@ -74,17 +74,22 @@ public class ImageTransform {
         Transform2D inverseTransform;
         Color background;
         int sampleCnt;
+        /** Location of output pixel (0,0) in inverseTransform's domain. */
+        int xOffset;
+        int yOffset;
 
         /** @param sampleCnt number of samples to take per pixel */
         GoodDitherer(BufferedImage input, int[] output, int outputWidth,
                         Transform2D inverseTransform, Color background,
-                        int sampleCnt) {
+                        int sampleCnt, int xOffset, int yOffset) {
             this.input = input;
             this.output = output;
             this.outputWidth = outputWidth;
             this.inverseTransform = inverseTransform;
             this.background = background;
             this.sampleCnt = sampleCnt;
+            this.xOffset = xOffset;
+            this.yOffset = yOffset;
         }
 
         @Override public double estimatedRunTime(Rectangle outputBounds) {
@@ -139,9 +144,9 @@ public class ImageTransform {
                         int pos = 0;
                         for (int xsub = 0; xsub < sampleCnt; ++xsub) {
                             for (int ysub = 0; ysub < sampleCnt; ++ysub) {
-                                points[pos++] = x +
+                                points[pos++] = x + xOffset +
                                     (xsub + randCache[(++randCachePos) & 0xfff]) / sampleCnt;
-                                points[pos++] = y +
+                                points[pos++] = y + yOffset +
                                     (ysub + randCache[(++randCachePos) & 0xfff]) / sampleCnt;
                             }
                         }
@@ -222,14 +227,20 @@ public class ImageTransform {
         int outputWidth;
         Transform2D inverseTransform;
         Color background;
+        /** Location of output pixel (0,0) in inverseTransform's domain. */
+        int xOffset;
+        int yOffset;
 
         FastDitherer(BufferedImage input, int[] output, int outputWidth,
-                     Transform2D inverseTransform, Color background) {
+                     Transform2D inverseTransform, Color background,
+                     int xOffset, int yOffset) {
             this.input = input;
             this.output = output;
             this.outputWidth = outputWidth;
             this.inverseTransform = inverseTransform;
             this.background = background;
+            this.xOffset = xOffset;
+            this.yOffset = yOffset;
         }
 
         @Override public double estimatedRunTime(Rectangle outputBounds) {
@@ -243,6 +254,8 @@ public class ImageTransform {
             int outputWidth = this.outputWidth;
             Transform2D inverseTransform = this.inverseTransform;
             int backRGB = background.getRGB();
+            double xOffset = this.xOffset + 0.5;
+            double yOffset = this.yOffset + 0.5;
             int inWidth = input.getWidth();
             int inHeight = input.getHeight();
 
@@ -254,7 +267,7 @@ public class ImageTransform {
                     int rgb;
 
                     try {
-                        Point2D.Double p = inverseTransform.transform(x + 0.5, y + 0.5);
+                        Point2D.Double p = inverseTransform.transform(x + xOffset, y + yOffset);
                         double xd = p.x;
                         double yd = p.y;
                         rgb = (xd >= 0 && xd < inWidth && yd >= 0 && yd < inHeight)
@@ -280,8 +293,28 @@ public class ImageTransform {
             Dimension size,
             DithererType dithererType,
             int imageType) {
-        int width = size.width;
-        int height = size.height;
+        return run(xform, null, input, background,
+                new Rectangle(0, 0, size.width, size.height), dithererType,
+                imageType);
+    }
+
+    /** Like run(xform, input, background, size, dithererType,
+        imageType), except that the output image covers outputRect
+        instead of starting at (0,0), so the caller does not need to
+        translate xform first, and the caller may supply xform's
+        inverse if it has already computed it.
+
+        @param inverseTransform The inverse of xform, or null to
+        compute it here. */
+    public static BufferedImage run(PolygonTransform xform,
+            Transform2D inverseTransform,
+            BufferedImage input,
+            Color background,
+            Rectangle outputRect,
+            DithererType dithererType,
+            int imageType) {
+        int width = outputRect.width;
+        int height = outputRect.height;
 
         StopWatch s = new StopWatch();
         s.start();
@@ -291,17 +324,19 @@ public class ImageTransform {
             background = (output.getAlphaRaster() == null)
                 ? Color.BLACK : new Color(0, 0, 0, 0);
         }
-        Transform2D inverseTransform;
 
-        try {
-            // We actually want the inverse transformation, to measure the
-            // color of the input image at each pixel of the output image.
-            inverseTransform = xform.createInverse();
-        } catch (NoninvertibleTransformException e) {
-            throw new RuntimeException(e);
+        if (inverseTransform == null) {
+            try {
+                // We actually want the inverse transformation, to
+                // measure the color of the input image at each pixel
+                // of the output image.
+                inverseTransform = xform.createInverse();
+            } catch (NoninvertibleTransformException e) {
+                throw new RuntimeException(e);
+            }
         }
 
-        Rectangle outputBounds = new Rectangle(0, 0, size.width, size.height);
+        Rectangle outputBounds = new Rectangle(0, 0, width, height);
         int[] outputRGB = new int[width * height];
 
         RectangleProcessor ditherer;
@@ -311,10 +346,11 @@ public class ImageTransform {
             int sampleCnt = (int) Math.round
                 (Math.max(2, Math.min(11, 2 * Math.sqrt(ipixels / (width * height)))));
             ditherer = new GoodDitherer(input, outputRGB, width,
-                    inverseTransform, background, sampleCnt);
+                    inverseTransform, background, sampleCnt, outputRect.x,
+                    outputRect.y);
         } else {
             ditherer = new FastDitherer(input, outputRGB, width,
-                    inverseTransform, background);
+                    inverseTransform, background, outputRect.x, outputRect.y);
         }
         mainPool.invoke(new RecursiveRectangleAction(ditherer, outputBounds, 500000));
         output.setRGB(0, 0, width, height, outputRGB, 0, width);
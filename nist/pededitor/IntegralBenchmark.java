@@ -0,0 +1,133 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.util.List;
+import java.util.function.DoubleUnaryOperator;
+
+/** Compare Romberg, adaptive Romberg, and Gauss-Kronrod integration
+    for computing the lengths of every curved segment in each
+    diagram, in terms of function evaluations, time, and accuracy,
+    and check that Gauss-Kronrod integration, which Param2Ds.length()
+    uses, meets the requested relative error. */
+public class IntegralBenchmark {
+    static final double RELATIVE_ERROR = 1e-10;
+
+    /** Function wrapper that counts its evaluations. Batched
+        evaluations are passed through if f supports them. */
+    static class Counter implements DoubleBatchOperator {
+        DoubleUnaryOperator f;
+        long cnt = 0;
+
+        Counter(DoubleUnaryOperator f) {
+            this.f = f;
+        }
+
+        @Override public double applyAsDouble(double x) {
+            ++cnt;
+            return f.applyAsDouble(x);
+        }
+
+        @Override public void applyAsDouble(double[] xs, double[] out) {
+            if (f instanceof DoubleBatchOperator) {
+                cnt += xs.length;
+                ((DoubleBatchOperator) f).applyAsDouble(xs, out);
+            } else {
+                DoubleBatchOperator.super.applyAsDouble(xs, out);
+            }
+        }
+    }
+
+    static final String[] METHODS = { "Romberg", "Adaptive", "GK" };
+    static final int GK = 2;
+
+    static NumericEstimate integral(int method, DoubleUnaryOperator f,
+            double lo, double hi, Precision p) {
+        switch (method) {
+        case 0:
+            return RombergIntegral.integral(f, lo, hi, p);
+        case 1:
+            return new AdaptiveRombergIntegral(f, lo, hi).integral(p);
+        default:
+            return GaussKronrodIntegral.integral(f, lo, hi, p);
+        }
+    }
+
+    static class Result {
+        long evals = 0;
+        long nanos = 0;
+        int failures = 0;
+        double maxRelError = 0;
+    }
+
+    static Result run(int method, BoundedParam2D[] curves, double[] exact) {
+        Precision p = new Precision();
+        p.relativeError = RELATIVE_ERROR;
+        p.absoluteError = 0;
+        Result res = new Result();
+        for (int i = 0; i < curves.length; ++i) {
+            BoundedParam2D c = curves[i];
+            Counter f = new Counter(new Param2Ds.DLengthDT(c));
+            long start = System.nanoTime();
+            NumericEstimate est = integral(method, f, c.getMinT(), c.getMaxT(), p);
+            res.nanos += System.nanoTime() - start;
+            res.evals += f.cnt;
+            if (!est.isOK()) {
+                ++res.failures;
+            }
+            if (exact[i] > 0) {
+                res.maxRelError = Math.max(res.maxRelError,
+                        Math.abs(est.value - exact[i]) / exact[i]);
+            }
+        }
+        return res;
+    }
+
+    public static void main(String[] args) {
+        Benchmark.checkUsage(args, IntegralBenchmark.class, null);
+
+        Benchmark.Table table = new Benchmark.Table(
+                "%-28s %5d  %-8s %9d %8.2f %4d %9.2g",
+                "File", "Segs", "Method", "Evals", "ms", "NC", "Max err");
+        // The reference lengths come from adaptive Romberg
+        // integration, so that Gauss-Kronrod integration is not
+        // checked against itself.
+        Precision exactP = new Precision();
+        exactP.relativeError = 1e-13;
+        exactP.absoluteError = 0;
+        exactP.maxSampleCnt = 1000000;
+        for (String filename: args) {
+            Diagram d = Benchmark.load(filename);
+            if (d == null) {
+                continue;
+            }
+            BoundedParam2D[] curves = d.getCurvedSegments();
+            if (curves.length == 0) {
+                continue;
+            }
+            double[] exact = new double[curves.length];
+            for (int i = 0; i < curves.length; ++i) {
+                BoundedParam2D c = curves[i];
+                exact[i] = new AdaptiveRombergIntegral
+                    (new Param2Ds.DLengthDT(c), c.getMinT(), c.getMaxT())
+                    .integral(exactP).value;
+            }
+
+            List<Result> results = Benchmark.secondPass
+                (METHODS.length, m -> run(m, curves, exact));
+            for (int m = 0; m < METHODS.length; ++m) {
+                Result r = results.get(m);
+                table.row((m == 0) ? Benchmark.name(filename) : "",
+                        curves.length, METHODS[m], r.evals,
+                        Benchmark.millis(r.nanos), r.failures, r.maxRelError);
+            }
+
+            Result gk = results.get(GK);
+            Benchmark.check(gk.failures == 0 && gk.maxRelError <= RELATIVE_ERROR,
+                    "%s: Gauss-Kronrod failed %d times, max error %g",
+                    filename, gk.failures, gk.maxRelError);
+        }
+        Benchmark.finish();
+    }
+}
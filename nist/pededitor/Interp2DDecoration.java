@@ -10,7 +10,6 @@ import java.awt.geom.Point2D;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 interface Interp2DDecoration extends Decoration,
                                      TransformableParameterizable2D, HasJSONId {
@@ -103,7 +102,7 @@ interface Interp2DDecoration extends Decoration,
     default String toJSONString() {
         try {
             return getClass().getCanonicalName()
-                + (new ObjectMapper()).writeValueAsString(this);
+                + Diagram.getCompactWriter().writeValueAsString(this);
         } catch (Exception e) {
             System.err.println(e);
             return getClass().getCanonicalName() + "[ERROR]";
@@ -0,0 +1,177 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Compare Bezier clipping against recursive subdivision in
+    BoundedParam2Ds.intersections(), using every pair of curved
+    segments in each diagram with the same parameters that
+    Diagram.intersections() uses, and check that both methods find the
+    same intersections. */
+public class IntersectionBenchmark {
+    static final double MAX_ERROR = 1e-9;
+    static final int MAX_STEPS = 80;
+
+    static class Result {
+        long nanos = 0;
+        int failures = 0;
+        int points = 0;
+        /** The intersections found for each pair of curves, or null
+            if intersections() failed to converge. */
+        ArrayList<ArrayList<Point2D.Double>> found = new ArrayList<>();
+    }
+
+    static Result run(BoundedParam2D[] curves, boolean useBezierClipping) {
+        boolean old = BoundedParam2Ds.useBezierClipping;
+        BoundedParam2Ds.useBezierClipping = useBezierClipping;
+        Result res = new Result();
+        try {
+            long t0 = System.nanoTime();
+            for (int i = 0; i < curves.length; ++i) {
+                for (int j = i + 1; j < curves.length; ++j) {
+                    ArrayList<Point2D.Double> is = null;
+                    try {
+                        is = BoundedParam2Ds.intersections
+                            (curves[i], curves[j], MAX_ERROR, MAX_STEPS);
+                        res.points += is.size();
+                    } catch (FailedToConvergeException x) {
+                        ++res.failures;
+                    }
+                    res.found.add(is);
+                }
+            }
+            res.nanos = System.nanoTime() - t0;
+        } finally {
+            BoundedParam2Ds.useBezierClipping = old;
+        }
+        return res;
+    }
+
+    /** @return true if p is within MAX_ERROR of c, allowing for
+        roundoff. */
+    static boolean isNear(BoundedParam2D c, Point2D p) {
+        return BoundedParam2Ds.distance(c, p, MAX_ERROR / 100, 1000).distance
+            <= MAX_ERROR * 1.01;
+    }
+
+    /** @return true if p and q may be estimates of the same
+        intersection of a and b. As the intersections() contract
+        allows, they may be far apart if the curves follow each other
+        closely: every point on the segment pq must be within
+        MAX_ERROR of both curves. */
+    static boolean same(Point2D.Double p, Point2D.Double q,
+            BoundedParam2D a, BoundedParam2D b) {
+        if (p.distance(q) <= MAX_ERROR) {
+            return true;
+        }
+        for (int i = 0; i <= 4; ++i) {
+            Point2D.Double r = new Point2D.Double(
+                    p.x + (q.x - p.x) * i / 4, p.y + (q.y - p.y) * i / 4);
+            if (!isNear(a, r) || !isNear(b, r)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return true if p is within MAX_ERROR of an endpoint of a or b.
+        Where a curve merely ends on the other, the overlap diameter
+        is zero, so the intersections() contract allows the
+        intersection to be omitted. */
+    static boolean isEndpointTouch(Point2D.Double p, BoundedParam2D a,
+            BoundedParam2D b) {
+        for (BoundedParam2D c: new BoundedParam2D[] { a, b }) {
+            if (p.distance(c.getStart()) <= MAX_ERROR
+                    || p.distance(c.getEnd()) <= MAX_ERROR) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Check that every point in ps is within MAX_ERROR of both a and
+        b, and that each one corresponds to a point in qs, unless it
+        is an endpoint touch.
+
+        @return the number of endpoint touches in ps that have no
+        counterpart in qs. */
+    static int compare(String filename, String method,
+            ArrayList<Point2D.Double> ps, ArrayList<Point2D.Double> qs,
+            BoundedParam2D a, BoundedParam2D b) {
+        int touches = 0;
+        for (Point2D.Double p: ps) {
+            Benchmark.check(isNear(a, p) && isNear(b, p),
+                    "%s: %s intersection %s is not on both curves",
+                    filename, method, Geom.toString(p));
+            boolean matched = false;
+            for (Point2D.Double q: qs) {
+                if (same(p, q, a, b)) {
+                    matched = true;
+                    break;
+                }
+            }
+            if (!matched) {
+                if (isEndpointTouch(p, a, b)) {
+                    ++touches;
+                } else {
+                    Benchmark.check(false,
+                            "%s: only %s found intersection %s",
+                            filename, method, Geom.toString(p));
+                }
+            }
+        }
+        return touches;
+    }
+
+    public static void main(String[] args) {
+        Benchmark.checkUsage(args, IntersectionBenchmark.class,
+                "\"Touch\" counts the intersections that one method found"
+                + " at an endpoint\nof one of the curves but the other"
+                + " method did not.");
+
+        Benchmark.Table table = new Benchmark.Table(
+                "%-28s %7d %8.1f %8.1f %6d %6d %6d %6d %6d %6d",
+                "File", "Pairs", "Sub ms", "Clip ms", "Sub NC", "Clip NC",
+                "Sub #", "Clip #", "Sub T", "Clip T");
+        for (String filename: args) {
+            Diagram d = Benchmark.load(filename);
+            if (d == null) {
+                continue;
+            }
+            BoundedParam2D[] curves = d.getCurvedSegments();
+            if (curves.length < 2) {
+                continue;
+            }
+            List<Result> res = Benchmark.secondPass(2, m -> run(curves, m == 1));
+            Result sub = res.get(0);
+            Result clip = res.get(1);
+
+            int subTouches = 0;
+            int clipTouches = 0;
+            int pair = 0;
+            for (int i = 0; i < curves.length; ++i) {
+                for (int j = i + 1; j < curves.length; ++j, ++pair) {
+                    ArrayList<Point2D.Double> ss = sub.found.get(pair);
+                    ArrayList<Point2D.Double> cs = clip.found.get(pair);
+                    if (ss == null || cs == null) {
+                        continue;
+                    }
+                    subTouches += compare(filename, "subdivision", ss, cs,
+                            curves[i], curves[j]);
+                    clipTouches += compare(filename, "clipping", cs, ss,
+                            curves[i], curves[j]);
+                }
+            }
+
+            table.row(Benchmark.name(filename), pair,
+                    Benchmark.millis(sub.nanos), Benchmark.millis(clip.nanos),
+                    sub.failures, clip.failures, sub.points, clip.points,
+                    subTouches, clipTouches);
+        }
+        Benchmark.finish();
+    }
+}
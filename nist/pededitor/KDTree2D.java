@@ -0,0 +1,276 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/** Static two-dimensional k-d tree that maps points to values. The
+    tree is built once and cannot be modified afterwards; to change
+    the contents, build a new tree. Queries are answered in roughly
+    O(log n) time instead of the O(n) time required to scan a list. */
+public class KDTree2D<T> {
+    /** Node coordinates, stored in tree order: the root of the
+        subtree covering [lo, hi) is at (lo + hi) / 2. */
+    double[] xs;
+    double[] ys;
+    /** Index of each node's value in the original input list. */
+    int[] indexes;
+    ArrayList<T> values;
+
+    /** Build a tree from the given values, using location() to
+        determine the position of each value. Values whose location
+        is null are omitted. */
+    public KDTree2D(List<? extends T> items,
+            Function<? super T, ? extends Point2D> location) {
+        values = new ArrayList<>(items);
+        int cnt = 0;
+        double[] x = new double[values.size()];
+        double[] y = new double[values.size()];
+        int[] ix = new int[values.size()];
+        for (int i = 0; i < values.size(); ++i) {
+            Point2D p = location.apply(values.get(i));
+            if (p == null) {
+                continue;
+            }
+            x[cnt] = p.getX();
+            y[cnt] = p.getY();
+            ix[cnt] = i;
+            ++cnt;
+        }
+        xs = Arrays.copyOf(x, cnt);
+        ys = Arrays.copyOf(y, cnt);
+        indexes = Arrays.copyOf(ix, cnt);
+        build(0, cnt, true);
+    }
+
+    /** @return the number of points in the tree. */
+    public int size() {
+        return xs.length;
+    }
+
+    /** @return the value whose location is closest to p, or null if
+        the tree is empty. Ties are broken in favor of the value that
+        came first in the list passed to the constructor. */
+    public T nearest(Point2D p) {
+        int[] res = nearestIndexes(p, 1);
+        return (res.length == 0) ? null : values.get(indexes[res[0]]);
+    }
+
+    /** @return the (up to) k values whose locations are closest to p,
+        sorted from nearest to farthest. */
+    public ArrayList<T> nearest(Point2D p, int k) {
+        ArrayList<T> res = new ArrayList<>();
+        for (int node: nearestIndexes(p, k)) {
+            res.add(values.get(indexes[node]));
+        }
+        return res;
+    }
+
+    /** @return all values whose locations lie within distance radius
+        of p, in the order in which they appeared in the list passed
+        to the constructor. */
+    public ArrayList<T> within(Point2D p, double radius) {
+        ArrayList<Integer> found = new ArrayList<>();
+        within(p.getX(), p.getY(), radius * radius, 0, xs.length, true, found);
+        Collections.sort(found);
+        ArrayList<T> res = new ArrayList<>();
+        for (int ix: found) {
+            res.add(values.get(ix));
+        }
+        return res;
+    }
+
+    /** Arrange nodes [lo, hi) so that the median by x (if splitX)
+        or y (otherwise) is at the middle, smaller values come before
+        it, and larger values come after it, and then recurse with
+        the other axis. */
+    void build(int lo, int hi, boolean splitX) {
+        if (hi - lo <= 1) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, splitX ? xs : ys);
+        build(lo, mid, !splitX);
+        build(mid + 1, hi, !splitX);
+    }
+
+    /** Quickselect: partially sort [lo, hi] by keys so that element
+        #k is in its sorted position. */
+    void select(int lo, int hi, int k, double[] keys) {
+        while (hi > lo) {
+            double pivot = keys[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    ++i;
+                }
+                while (keys[j] > pivot) {
+                    --j;
+                }
+                if (i <= j) {
+                    swap(i, j);
+                    ++i;
+                    --j;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    void swap(int i, int j) {
+        double t = xs[i]; xs[i] = xs[j]; xs[j] = t;
+        t = ys[i]; ys[i] = ys[j]; ys[j] = t;
+        int it = indexes[i]; indexes[i] = indexes[j]; indexes[j] = it;
+    }
+
+    /** Bounded max-heap of the best candidates found so far, ordered
+        by squared distance and then by index. */
+    class Candidates {
+        int[] nodes;
+        double[] distSqs;
+        int size = 0;
+
+        Candidates(int k) {
+            nodes = new int[k];
+            distSqs = new double[k];
+        }
+
+        boolean isFull() {
+            return size == nodes.length;
+        }
+
+        double worst() {
+            return isFull() ? distSqs[0] : Double.POSITIVE_INFINITY;
+        }
+
+        /** @return true if (distSq1, node1) is farther than (distSq2,
+            node2). */
+        boolean isWorse(double distSq1, int node1, double distSq2, int node2) {
+            return distSq1 > distSq2
+                || (distSq1 == distSq2 && indexes[node1] > indexes[node2]);
+        }
+
+        void offer(int node, double distSq) {
+            if (!isFull()) {
+                int i = size++;
+                while (i > 0) {
+                    int parent = (i - 1) / 2;
+                    if (!isWorse(distSq, node, distSqs[parent], nodes[parent])) {
+                        break;
+                    }
+                    nodes[i] = nodes[parent];
+                    distSqs[i] = distSqs[parent];
+                    i = parent;
+                }
+                nodes[i] = node;
+                distSqs[i] = distSq;
+            } else if (isWorse(distSqs[0], nodes[0], distSq, node)) {
+                siftDown(node, distSq);
+            }
+        }
+
+        /** Replace the root with (node, distSq) and restore the heap. */
+        void siftDown(int node, double distSq) {
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && isWorse(distSqs[child + 1], nodes[child + 1],
+                                distSqs[child], nodes[child])) {
+                    ++child;
+                }
+                if (!isWorse(distSqs[child], nodes[child], distSq, node)) {
+                    break;
+                }
+                nodes[i] = nodes[child];
+                distSqs[i] = distSqs[child];
+                i = child;
+            }
+            nodes[i] = node;
+            distSqs[i] = distSq;
+        }
+
+        /** Empty the heap, returning its contents sorted from nearest
+            to farthest. */
+        int[] drain() {
+            int[] res = new int[size];
+            while (size > 0) {
+                res[size - 1] = nodes[0];
+                --size;
+                if (size > 0) {
+                    siftDown(nodes[size], distSqs[size]);
+                }
+            }
+            return res;
+        }
+    }
+
+    int[] nearestIndexes(Point2D p, int k) {
+        if (k <= 0 || xs.length == 0) {
+            return new int[0];
+        }
+        Candidates c = new Candidates(Math.min(k, xs.length));
+        nearest(p.getX(), p.getY(), 0, xs.length, true, c);
+        return c.drain();
+    }
+
+    void nearest(double x, double y, int lo, int hi, boolean splitX,
+            Candidates c) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        double dx = x - xs[mid];
+        double dy = y - ys[mid];
+        c.offer(mid, dx * dx + dy * dy);
+        double delta = splitX ? dx : dy;
+        // Search the side containing the query point first, and then
+        // the other side only if it could contain a closer point.
+        if (delta < 0) {
+            nearest(x, y, lo, mid, !splitX, c);
+            if (delta * delta <= c.worst()) {
+                nearest(x, y, mid + 1, hi, !splitX, c);
+            }
+        } else {
+            nearest(x, y, mid + 1, hi, !splitX, c);
+            if (delta * delta <= c.worst()) {
+                nearest(x, y, lo, mid, !splitX, c);
+            }
+        }
+    }
+
+    void within(double x, double y, double radiusSq, int lo, int hi,
+            boolean splitX, List<Integer> found) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        double dx = x - xs[mid];
+        double dy = y - ys[mid];
+        if (dx * dx + dy * dy <= radiusSq) {
+            found.add(indexes[mid]);
+        }
+        double delta = splitX ? dx : dy;
+        if (delta <= 0 || delta * delta <= radiusSq) {
+            within(x, y, radiusSq, lo, mid, !splitX, found);
+        }
+        if (delta >= 0 || delta * delta <= radiusSq) {
+            within(x, y, radiusSq, mid + 1, hi, !splitX, found);
+        }
+    }
+}
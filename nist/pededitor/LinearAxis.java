@@ -51,6 +51,17 @@ public class LinearAxis extends Axis {
         return a * px + b * py + c;
     }
 
+    @Override public void applyAsDouble(double[] xys, int xysOff,
+            double[] values, int valuesOff, int cnt) {
+        double a = this.a;
+        double b = this.b;
+        double c = this.c;
+        for (int i = 0; i < cnt; ++i) {
+            int j = xysOff + 2 * i;
+            values[valuesOff + i] = a * xys[j] + b * xys[j + 1] + c;
+        }
+    }
+
     /** Analogous to AffineTransform.deltaTransform(). Return
         value(Point(x0 + dx, y0 + dy)) - value(Point(x0, y0)). The
         value is independent of x0 and y0 because the axis is
@@ -0,0 +1,110 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/** Compare the time to load and save PED files, as a batch job that
+    processes many files would, using a new mapper for every file
+    ("Fresh"), a shared mapper that looks up the reader and writer on
+    every call ("Shared"), and the prebuilt reader and writer that
+    Diagram uses ("Prebuilt"). Files are read into memory first, so
+    disk speed does not matter. All three methods must save the same
+    bytes. */
+public class LoadSaveBenchmark {
+    /** Number of times each file is loaded and saved per pass. */
+    static final int REPEAT = 10;
+
+    static class Result {
+        long loadNanos = 0;
+        long saveNanos = 0;
+        /** The saved bytes of each file. */
+        byte[][] saved;
+    }
+
+    /** @param method 0 for Fresh, 1 for Shared, or 2 for Prebuilt. */
+    static Result run(byte[][] files, int method) throws IOException {
+        Result res = new Result();
+        res.saved = new byte[files.length][];
+        ObjectMapper shared = Diagram.getObjectMapper();
+        for (int i = 0; i < REPEAT; ++i) {
+            for (int j = 0; j < files.length; ++j) {
+                byte[] file = files[j];
+                long t0 = System.nanoTime();
+                ObjectMapper mapper = (method == 0)
+                    ? Diagram.computeObjectMapper() : shared;
+                Diagram d = (method == 2)
+                    ? Diagram.getDiagramReader().readValue(file)
+                    : mapper.readValue(file, Diagram.class);
+                long t1 = System.nanoTime();
+                ObjectWriter writer = (method == 2) ? Diagram.getPEDWriter()
+                    : mapper.writer(Tabify.PRETTY_PRINTER);
+                // As saveAsPED() does, so the ids do not depend on
+                // what was loaded before.
+                d.resetIds();
+                res.saved[j] = writer.writeValueAsBytes(d);
+                res.loadNanos += t1 - t0;
+                res.saveNanos += System.nanoTime() - t1;
+            }
+        }
+        return res;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Benchmark.checkUsage(args, LoadSaveBenchmark.class, null);
+
+        byte[][] files = new byte[args.length][];
+        for (int i = 0; i < args.length; ++i) {
+            files[i] = Files.readAllBytes(Paths.get(args[i]));
+        }
+
+        String[] names = { "Fresh", "Shared", "Prebuilt" };
+        List<Result> results = Benchmark.secondPass
+            (names.length, m -> run(files, m));
+
+        int docCnt = files.length * REPEAT;
+        Benchmark.Table table = new Benchmark.Table(
+                "%-9s %12.3f %12.3f", "Method", "Load ms/doc", "Save ms/doc");
+        for (int i = 0; i < names.length; ++i) {
+            Result r = results.get(i);
+            table.row(names[i], Benchmark.millis(r.loadNanos) / docCnt,
+                    Benchmark.millis(r.saveNanos) / docCnt);
+            for (int j = 0; j < files.length; ++j) {
+                Benchmark.check
+                    (Arrays.equals(r.saved[j], results.get(0).saved[j]),
+                     "%s: %s output differs from %s output", args[j],
+                     names[i], names[0]);
+            }
+        }
+
+        // The one-time cost of preparing a new mapper, and how much
+        // of the first load it saves. This comes after the other
+        // runs so that class loading and JIT compilation are
+        // already done.
+        ObjectMapper cold = Diagram.computeObjectMapper();
+        long t0 = System.nanoTime();
+        cold.readValue(files[0], Diagram.class);
+        long coldNanos = System.nanoTime() - t0;
+        ObjectMapper prepared = Diagram.computeObjectMapper();
+        t0 = System.nanoTime();
+        Diagram.prepareMapper(prepared);
+        long prepareNanos = System.nanoTime() - t0;
+        t0 = System.nanoTime();
+        prepared.readValue(files[0], Diagram.class);
+        long preparedNanos = System.nanoTime() - t0;
+        System.out.println(String.format(
+                        "First load: %.1f ms unprepared, %.1f ms prepared"
+                        + " (prepareMapper() took %.1f ms)",
+                        Benchmark.millis(coldNanos), Benchmark.millis(preparedNanos),
+                        Benchmark.millis(prepareNanos)));
+        Benchmark.finish();
+    }
+}
@@ -0,0 +1,92 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Compare the closed-form nearest point computation for cubic
+    Bezier curves (CubicParam2D.useRootFinder = true) against
+    estimating the distance and refining it by bisection, using the
+    same queries as DistanceBenchmark, and check that the closed form
+    is never farther than bisection by more than MAX_ERROR. */
+public class NearestPointBenchmark {
+    static final double MAX_ERROR = 1e-6;
+    static final int MAX_STEPS = 2000;
+
+    static class Result {
+        long steps = 0;
+        long nanos = 0;
+        double[] distances;
+    }
+
+    static Result run(ArrayList<OffsetParam2D> params, Point2D.Double[] points,
+            boolean useRootFinder) {
+        boolean old = CubicParam2D.useRootFinder;
+        CubicParam2D.useRootFinder = useRootFinder;
+        Result res = new Result();
+        res.distances = new double[points.length];
+        int[] stepCnt = new int[1];
+        try {
+            for (int i = 0; i < points.length; ++i) {
+                long t0 = System.nanoTime();
+                CurveDistanceRange dist = BoundedParam2Ds.distance(
+                        params, points[i], MAX_ERROR, MAX_STEPS, stepCnt);
+                res.nanos += System.nanoTime() - t0;
+                res.steps += stepCnt[0];
+                res.distances[i] = dist.distance;
+            }
+        } finally {
+            CubicParam2D.useRootFinder = old;
+        }
+        return res;
+    }
+
+    public static void main(String[] args) {
+        Benchmark.checkUsage(args, NearestPointBenchmark.class, null);
+
+        Benchmark.Table table = new Benchmark.Table(
+                "%-28s %9d %9d %9.1f %9.1f %7d %9.2g",
+                "File", "Old steps", "New steps", "Old ms", "New ms",
+                "Closer", "Max worse");
+        for (String filename: args) {
+            Diagram d = Benchmark.load(filename);
+            if (d == null) {
+                continue;
+            }
+            ArrayList<OffsetParam2D> params
+                = OffsetParam2D.separate(d.pageCurves().params);
+            if (params.isEmpty()) {
+                continue;
+            }
+            Point2D.Double[] points = Benchmark.randomPagePoints(
+                    d, DistanceBenchmark.QUERY_CNT, 1);
+            List<Result> res = Benchmark.secondPass
+                (2, m -> run(params, points, m == 1));
+            Result oldRes = res.get(0);
+            Result newRes = res.get(1);
+
+            // "Closer" counts the queries for which the new method
+            // found a point nearer by more than roundoff; "Max worse"
+            // is the largest amount by which it was farther.
+            int closer = 0;
+            double maxWorse = 0;
+            for (int i = 0; i < points.length; ++i) {
+                double diff = newRes.distances[i] - oldRes.distances[i];
+                if (diff < -1e-12) {
+                    ++closer;
+                }
+                maxWorse = Math.max(maxWorse, diff);
+            }
+
+            table.row(Benchmark.name(filename), oldRes.steps, newRes.steps,
+                    Benchmark.millis(oldRes.nanos),
+                    Benchmark.millis(newRes.nanos), closer, maxWorse);
+            Benchmark.check(maxWorse <= MAX_ERROR,
+                    "%s: closed form is farther by %g", filename, maxWorse);
+        }
+        Benchmark.finish();
+    }
+}
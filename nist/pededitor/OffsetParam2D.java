@@ -38,6 +38,23 @@ public class OffsetParam2D implements BoundedParam2D {
     @Override public Point2D.Double getDerivative(double t) {
         return c.getDerivative(t - offset);
     }
+
+    @Override public double getSpeed(double t) {
+        return c.getSpeed(t - offset);
+    }
+
+    @Override public void getDerivatives(double[] ts, double[] dxs,
+            double[] dys) {
+        if (offset == 0) {
+            c.getDerivatives(ts, dxs, dys);
+            return;
+        }
+        double[] shifted = new double[ts.length];
+        for (int i = 0; i < ts.length; ++i) {
+            shifted[i] = ts[i] - offset;
+        }
+        c.getDerivatives(shifted, dxs, dys);
+    }
     @Override public Point2D.Double getStart() { return c.getStart(); }
     @Override public Point2D.Double getEnd() { return c.getEnd(); }
 
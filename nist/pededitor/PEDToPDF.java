@@ -38,7 +38,12 @@ public class PEDToPDF {
         diagram components, remove the x3 and y3 keys (which are used
         to guess diagram components). */
     public static Diagram loadAndFix(String filename, boolean crop) throws IOException {
-        Diagram d = Diagram.loadFrom(new File(filename));
+        return fix(Diagram.loadFrom(new File(filename)), filename, crop);
+    }
+
+    /** The part of loadAndFix() that follows loading. filename is
+        only used in messages. */
+    static Diagram fix(Diagram d, String filename, boolean crop) {
         Rectangle2D bounds = new Rectangle2D.Double(-0.5, -0.5, 2.0, 2.0);
         if (crop && d.crop(bounds)) {
             System.err.println(filename + " did not fit in the normal page bounds.");
@@ -102,42 +107,46 @@ public class PEDToPDF {
         int outFileCnt = 0;
         String ofn = null;
 
-        for (String filename: peds) {
-            System.out.println("Reading " + filename);
-            ++inFileNo;
-            if (inFileNo == 0
-                || (diagramsPerDocument > 0
-                    && inFileNo % diagramsPerDocument == 0)) {
-                ++outFileCnt;
-                if (doc != null) {
-                    doc.close();
+        try (BulkLoader loader = new BulkLoader(peds)) {
+            while (loader.hasNext()) {
+                BulkLoader.Result loaded = loader.next();
+                String filename = loaded.filename;
+                System.out.println("Reading " + filename);
+                ++inFileNo;
+                if (inFileNo == 0
+                    || (diagramsPerDocument > 0
+                        && inFileNo % diagramsPerDocument == 0)) {
+                    ++outFileCnt;
+                    if (doc != null) {
+                        doc.close();
+                    }
+                    ofn = (diagramsPerDocument == 0) ? "/ebdata/pdf/combined.pdf"
+                        : String.format("/ebdata/pdf/combined%04d.pdf", outFileCnt);
+                    System.out.println("Starting " + ofn);
+                    doc = new Document(PageSize.LETTER);
+                    try {
+                        copy = new PdfCopy(doc, new FileOutputStream(ofn));
+                    } catch (Exception e) {
+                        System.err.println(e);
+                        return;
+                    }
+                    doc.open();
                 }
-                ofn = (diagramsPerDocument == 0) ? "/ebdata/pdf/combined.pdf"
-                    : String.format("/ebdata/pdf/combined%04d.pdf", outFileCnt);
-                System.out.println("Starting " + ofn);
-                doc = new Document(PageSize.LETTER);
+
                 try {
-                    copy = new PdfCopy(doc, new FileOutputStream(ofn));
-                } catch (Exception e) {
-                    System.err.println(e);
-                    return;
+                    Diagram d = fix(loaded.get(), filename, true);
+                    copy.addPage(copy.getImportedPage
+                                 (new PdfReader(DiagramPDF.toPDFByteArray(d)),
+                                  1));
+                    int pedpos = filename.indexOf("\\ped\\");
+                    String pedout = filename.substring(0, pedpos) + "\\ped2\\"
+                        + filename.substring(pedpos + 5);
+                    System.out.println(filename + " -> " + ofn);
+                    System.out.println(filename + " -> " + pedout);
+                    d.saveAsPED(Paths.get(pedout));
+                } catch (IOException | BadPdfFormatException x) {
+                    System.err.println(filename + ": " + x);
                 }
-                doc.open();
-            }
-
-            try {
-                Diagram d = loadAndFix(filename, true);
-                copy.addPage(copy.getImportedPage
-                             (new PdfReader(DiagramPDF.toPDFByteArray(d)),
-                              1));
-                int pedpos = filename.indexOf("\\ped\\");
-                String pedout = filename.substring(0, pedpos) + "\\ped2\\"
-                    + filename.substring(pedpos + 5);
-                System.out.println(filename + " -> " + ofn);
-                System.out.println(filename + " -> " + pedout);
-                d.saveAsPED(Paths.get(pedout));
-            } catch (IOException | BadPdfFormatException x) {
-                System.err.println(filename + ": " + x);
             }
         }
         doc.close();
@@ -145,16 +154,22 @@ public class PEDToPDF {
 
     public static void loadAndSave(String filename, String outdir) {
         try {
-            Diagram d = loadAndFix(filename, false);
-            int pedpos = filename.lastIndexOf("\\");
-            String ofn = outdir + "\\" + filename.substring(pedpos + 1);
-            System.out.println(filename + " -> " + ofn);
-            d.saveAsPED(Paths.get(ofn));
+            fixAndSave(Diagram.loadFrom(new File(filename)), filename, outdir);
         } catch (IOException x) {
             System.err.println(filename + ": " + x);
         }
     }
 
+    /** The part of loadAndSave() that follows loading. */
+    static void fixAndSave(Diagram d, String filename, String outdir)
+        throws IOException {
+        fix(d, filename, false);
+        int pedpos = filename.lastIndexOf("\\");
+        String ofn = outdir + "\\" + filename.substring(pedpos + 1);
+        System.out.println(filename + " -> " + ofn);
+        d.saveAsPED(Paths.get(ofn));
+    }
+
     /** Convert all files under PED_DIR to PDFs. Also fix the files
         and place the fixed files in the ped2 directory. */
     public static void convertAll() {
@@ -187,18 +202,22 @@ public class PEDToPDF {
             return;
         }
 
-        for (String filename: filenames) {
-            try {
-                Diagram d = loadAndFix(filename, true);
-                int pedpos = filename.indexOf("\\pedw\\");
-                String pedout = filename.substring(0, pedpos) + "\\pedw2\\"
-                    + filename.substring(pedpos + 6);
-                System.out.println(filename + " -> " + pedout);
-                d.saveAsPED(Paths.get(pedout));
-            } catch (IOException x) {
-                // IOException can never be thrown by the iteration.
-                // In this snippet, it can only be thrown by newDirectoryStream.
-                System.err.println(x);
+        try (BulkLoader loader = new BulkLoader(filenames)) {
+            while (loader.hasNext()) {
+                BulkLoader.Result loaded = loader.next();
+                String filename = loaded.filename;
+                try {
+                    Diagram d = fix(loaded.get(), filename, true);
+                    int pedpos = filename.indexOf("\\pedw\\");
+                    String pedout = filename.substring(0, pedpos) + "\\pedw2\\"
+                        + filename.substring(pedpos + 6);
+                    System.out.println(filename + " -> " + pedout);
+                    d.saveAsPED(Paths.get(pedout));
+                } catch (IOException x) {
+                    // IOException can never be thrown by the iteration.
+                    // In this snippet, it can only be thrown by newDirectoryStream.
+                    System.err.println(x);
+                }
             }
         }
         System.out.println("Batch conversion complete.");
@@ -207,9 +226,14 @@ public class PEDToPDF {
     /** Convert all files under PED_DIR to PDFs. Also fix the files
         and place the fixed files in the ped2 directory. */
     public static void fixAll(String inDir, String outDir) {
-        try {
-            for (String filename: getInputFilenames(inDir)) {
-                loadAndSave(filename, outDir);
+        try (BulkLoader loader = new BulkLoader(getInputFilenames(inDir))) {
+            while (loader.hasNext()) {
+                BulkLoader.Result loaded = loader.next();
+                try {
+                    fixAndSave(loaded.get(), loaded.filename, outDir);
+                } catch (IOException x) {
+                    System.err.println(loaded.filename + ": " + x);
+                }
             }
             System.out.println("Batch conversion complete.");
         } catch (IOException | DirectoryIteratorException x) {
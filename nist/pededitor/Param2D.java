@@ -15,6 +15,26 @@ public interface Param2D {
     Point2D.Double getLocation(double t);
     Point2D.Double getDerivative(double t);
 
+    /** Return the magnitude of getDerivative(t), or 0 if the
+        derivative is undefined. Implementations should override this
+        if they can compute it without allocating anything. */
+    default double getSpeed(double t) {
+        Point2D.Double d = getDerivative(t);
+        return (d == null) ? 0 : Math.sqrt(d.x * d.x + d.y * d.y);
+    }
+
+    /** Set (dxs[i], dys[i]) to getDerivative(ts[i]) for every i, or
+        to (0, 0) if that derivative is undefined. Implementations
+        should override this if they can compute it without
+        allocating anything. */
+    default void getDerivatives(double[] ts, double[] dxs, double[] dys) {
+        for (int i = 0; i < ts.length; ++i) {
+            Point2D.Double d = getDerivative(ts[i]);
+            dxs[i] = (d == null) ? 0 : d.x;
+            dys[i] = (d == null) ? 0 : d.y;
+        }
+    }
+
     /** Return the distance between p and this curve. The "point"
         field holds an estimate of the closest point, and the
         "distance" and "t" fields holds the distance and
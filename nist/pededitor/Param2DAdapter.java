@@ -33,9 +33,8 @@ abstract public class Param2DAdapter
 
     public Estimate length(Precision p, double t0, double t1) {
         // Bezier curves of any reasonable degree are so well-behaved
-        // that Romberg integration is a good choice.
-        return RombergIntegral.integral
-            (new Param2Ds.DLengthDT(this), t0, t1, p);
+        // that high-order quadrature rules converge quickly.
+        return Param2Ds.length(this, t0, t1, p);
     }
 
     @Override public Estimate length
@@ -42,6 +42,13 @@ public class Param2DBounder implements BoundedParam2D {
     @Override public Point2D.Double getDerivative(double t) {
         return c.getDerivative(t);
     }
+    @Override public double getSpeed(double t) {
+        return c.getSpeed(t);
+    }
+    @Override public void getDerivatives(double[] ts, double[] dxs,
+            double[] dys) {
+        c.getDerivatives(ts, dxs, dys);
+    }
     @Override public CurveDistanceRange distance(Point2D p) { 
         return c.distance(p, t0, t1);
     }
@@ -3,30 +3,63 @@
 
 package gov.nist.pededitor;
 
-import java.awt.geom.Point2D;
 import java.util.function.DoubleUnaryOperator;
 
 /** Class that supports computing distances from a point to a curve
     with a defined derivative. */
 public class Param2Ds {
-    public static class DLengthDT implements DoubleUnaryOperator {
+    /** The speed of a curve as a function of t. The batched
+        applyAsDouble() uses scratch buffers, so an instance should
+        not be shared between threads. */
+    public static class DLengthDT implements DoubleBatchOperator {
         Param2D p;
+        double[] dxs = new double[0];
+        double[] dys = new double[0];
 
         public DLengthDT(Param2D p) {
             this.p = p;
         }
 
         @Override public double applyAsDouble(double t) {
-            Point2D.Double d = p.getDerivative(t);
-            if (d == null) {
-                return 0;
+            return p.getSpeed(t);
+        }
+
+        @Override public void applyAsDouble(double[] ts, double[] out) {
+            if (dxs.length < ts.length) {
+                dxs = new double[ts.length];
+                dys = new double[ts.length];
             }
-            double x = d.x;
-            double y = d.y;
-            return Math.sqrt(x*x + y*y);
+            speeds(p, ts, out, dxs, dys);
+        }
+    }
+
+    /** Set out[i] = c.getSpeed(ts[i]) for every i, using
+        c.getDerivatives() to evaluate the derivatives in one batch.
+        dxs and dys are scratch buffers at least as long as ts. */
+    static void speeds(Param2D c, double[] ts, double[] out,
+            double[] dxs, double[] dys) {
+        c.getDerivatives(ts, dxs, dys);
+        for (int i = 0; i < ts.length; ++i) {
+            double dx = dxs[i];
+            double dy = dys[i];
+            out[i] = Math.sqrt(dx * dx + dy * dy);
         }
     }
 
+    /** If true, length() uses adaptive Gauss-Kronrod quadrature;
+        otherwise, it uses Romberg integration. */
+    public static boolean useGaussKronrod = true;
+
+    /** Return the length of c over [lo, hi] to precision p, using the
+        integration method selected by useGaussKronrod. */
+    static public NumericEstimate length
+        (Param2D c, double lo, double hi, Precision p) {
+        DoubleUnaryOperator dsdt = new Param2Ds.DLengthDT(c);
+        return useGaussKronrod
+            ? GaussKronrodIntegral.integral(dsdt, lo, hi, p)
+            : RombergIntegral.integral(dsdt, lo, hi, p);
+    }
+
     static public AdaptiveRombergIntegral lengthIntegral
         (Param2D c, double lo, double hi) {
         DoubleUnaryOperator dsdt = new Param2Ds.DLengthDT(c);
@@ -221,6 +221,36 @@ public class PathParam2D extends BoundedParam2DAdapter
         return getSegment(t).getDerivative(t);
     }
 
+    @Override public double getSpeed(double t) {
+        return getSegment(t).getSpeed(t);
+    }
+
+    /** If every ts[i] belongs to the same segment, as the nodes of a
+        quadrature rule over part of one segment do, then evaluate
+        them all in one call to that segment. */
+    @Override public void getDerivatives(double[] ts, double[] dxs,
+            double[] dys) {
+        if (ts.length == 0) {
+            return;
+        }
+        int segNo = getSegmentNo(ts[0]);
+        for (int i = 1; i < ts.length; ++i) {
+            if (getSegmentNo(ts[i]) != segNo) {
+                segNo = -1;
+                break;
+            }
+        }
+        if (segNo >= 0) {
+            segments.get(segNo).getDerivatives(ts, dxs, dys);
+            return;
+        }
+        for (int i = 0; i < ts.length; ++i) {
+            Point2D.Double d = getDerivative(ts[i]);
+            dxs[i] = (d == null) ? 0 : d.x;
+            dys[i] = (d == null) ? 0 : d.y;
+        }
+    }
+
     /** Return the distance between p and s, or return a distance of 0
         if s.contains(p). */
     static public CurveDistanceRange distance
@@ -3,6 +3,7 @@
 
 package gov.nist.pededitor;
 
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -10,7 +11,6 @@ import java.util.List;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 // The annotations below for deserializing this GeneralPolyline into
 // its appropriate subtype were recommended on Programmer Bruce's
@@ -76,6 +76,32 @@ abstract public class PointsInterp2D implements Interp2D {
         param = null;
     }
 
+    /** Transform all vertices with one bulk call. */
+    @Override public void transform(AffineTransform xform) {
+        double[] coords = Geom.toCoordinates(points);
+        xform.transform(coords, 0, coords, 0, points.size());
+        setCoordinates(coords);
+    }
+
+    /** Transform all vertices with one bulk call. If the transform
+        throws an exception, then the curve is left unchanged. */
+    @Override public void transform(SlopeTransform2D xform)
+        throws UnsolvableException {
+        double[] coords = Geom.toCoordinates(points);
+        xform.transform(coords, 0, coords, 0, points.size());
+        setCoordinates(coords);
+    }
+
+    /** Move every vertex to the location given by the packed
+        coordinate array coords (x0, y0, x1, y1, ...), which must hold
+        exactly size() points. */
+    protected void setCoordinates(double[] coords) {
+        for (int i = 0; i < points.size(); ++i) {
+            points.get(i).setLocation(coords[2 * i], coords[2 * i + 1]);
+        }
+        param = null;
+    }
+
     /** Replace the given vertex, which must exist. */
     @Override public void set(int vertexNo, Point2D point) {
         points.set(vertexNo, new Point2D.Double(point.getX(), point.getY()));
@@ -99,7 +125,7 @@ abstract public class PointsInterp2D implements Interp2D {
     @Override public String toString() {
         try {
             return getClass().getCanonicalName()
-                + (new ObjectMapper()).writeValueAsString(this);
+                + Diagram.getCompactWriter().writeValueAsString(this);
         } catch (Exception e) {
             System.err.println(e);
             return getClass().getCanonicalName() + "[ERROR]";
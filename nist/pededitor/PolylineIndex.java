@@ -0,0 +1,324 @@
+/* Eric Boesch, NIST Materials Measurement Laboratory, 2014. This file
+ * is placed into the public domain. */
+
+package gov.nist.pededitor;
+
+import java.awt.geom.Line2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Spatial index of polyline approximations of a list of curves,
+    for finding the curve nearest to a point.
+
+    Each curve is split into pieces that lie within a known distance
+    (the piece's error) of the chord connecting the piece's
+    endpoints. The pieces are stored in a bounding volume hierarchy,
+    so a query can quickly find the few pieces whose chords come close
+    enough to the point that the piece might contain the nearest
+    point. Only those pieces are then passed to the exact but slow
+    BoundedParam2D.distance() method. */
+public class PolylineIndex {
+    /** Stop subdividing a curve after this many bisections, even if
+        the error bound is not met. */
+    static final int MAX_DEPTH = 16;
+
+    ArrayList<BoundedParam2D> curves;
+
+    /** Piece data, indexed by piece number. */
+    int[] curveIndexes;
+    BoundedParam2D[] pieces;
+    double[] x0s, y0s, x1s, y1s;
+    double[] errors;
+
+    /** Bounding volume hierarchy, stored in tree order as in
+        KDTree2D: order[(lo + hi) / 2] is a piece number, and
+        node bounds minXs[(lo + hi) / 2] etc. bound all of the pieces
+        (expanded by their errors) listed in order[lo, hi). */
+    int[] order;
+    double[] minXs, minYs, maxXs, maxYs;
+
+    /** Build an index of the given curves that approximates each one
+        by line segments that lie within tolerance of it. */
+    public PolylineIndex(List<? extends BoundedParam2D> curves,
+            double tolerance) {
+        this.curves = new ArrayList<>(curves);
+        ArrayList<BoundedParam2D> ps = new ArrayList<>();
+        ArrayList<Integer> cis = new ArrayList<>();
+        ArrayList<Double> errs = new ArrayList<>();
+        for (int i = 0; i < this.curves.size(); ++i) {
+            BoundedParam2D c = this.curves.get(i);
+            flatten(c, c.getMinT(), c.getMaxT(), tolerance, 0, i,
+                    ps, cis, errs);
+        }
+
+        int cnt = ps.size();
+        pieces = ps.toArray(new BoundedParam2D[0]);
+        curveIndexes = new int[cnt];
+        errors = new double[cnt];
+        x0s = new double[cnt];
+        y0s = new double[cnt];
+        x1s = new double[cnt];
+        y1s = new double[cnt];
+        order = new int[cnt];
+        for (int i = 0; i < cnt; ++i) {
+            curveIndexes[i] = cis.get(i);
+            errors[i] = errs.get(i);
+            Point2D.Double s = pieces[i].getStart();
+            Point2D.Double e = pieces[i].getEnd();
+            x0s[i] = s.x;
+            y0s[i] = s.y;
+            x1s[i] = e.x;
+            y1s[i] = e.y;
+            order[i] = i;
+        }
+        minXs = new double[cnt];
+        minYs = new double[cnt];
+        maxXs = new double[cnt];
+        maxYs = new double[cnt];
+        build(0, cnt);
+    }
+
+    /** @return the number of line segments used to approximate the
+        curves. */
+    public int size() {
+        return pieces.length;
+    }
+
+    /** Append pieces of c over [t0, t1] to ps, along with their curve
+        indexes and error bounds. */
+    static void flatten(BoundedParam2D c, double t0, double t1,
+            double tolerance, int depth, int curveIndex,
+            List<BoundedParam2D> ps, List<Integer> cis, List<Double> errs) {
+        BoundedParam2D piece = c.thisOrSubset(t0, t1);
+        double error = chordError(piece);
+        if (error > tolerance && depth < MAX_DEPTH) {
+            double mid = (t0 + t1) / 2;
+            flatten(c, t0, mid, tolerance, depth + 1, curveIndex,
+                    ps, cis, errs);
+            flatten(c, mid, t1, tolerance, depth + 1, curveIndex,
+                    ps, cis, errs);
+            return;
+        }
+        ps.add(piece);
+        cis.add(curveIndex);
+        errs.add(error);
+    }
+
+    /** @return an upper bound on the distance from any point of c to
+        the line segment connecting c's endpoints. */
+    static double chordError(BoundedParam2D c) {
+        Point2D.Double s = c.getStart();
+        Point2D.Double e = c.getEnd();
+        double dx = e.x - s.x;
+        double dy = e.y - s.y;
+        double len = Math.sqrt(dx * dx + dy * dy);
+        if (len == 0) {
+            // Use the farthest corner of the bounding box.
+            Rectangle2D.Double b = c.getBounds();
+            double ex = Math.max(s.x - b.x, b.x + b.width - s.x);
+            double ey = Math.max(s.y - b.y, b.y + b.height - s.y);
+            return Math.sqrt(ex * ex + ey * ey);
+        }
+        double ux = dx / len;
+        double uy = dy / len;
+        // Bound the curve's extent perpendicular to the chord, and how
+        // far it overshoots the chord's ends along it.
+        double[] wb = c.getLinearFunctionBounds(-uy, ux);
+        double w = -uy * s.x + ux * s.y;
+        double perp = Math.max(w - wb[0], wb[1] - w);
+        double[] lb = c.getLinearFunctionBounds(ux, uy);
+        double l = ux * s.x + uy * s.y;
+        double over = Math.max(0, Math.max(l - lb[0], lb[1] - (l + len)));
+        return Math.sqrt(perp * perp + over * over);
+    }
+
+    /** Arrange order[lo, hi) so that pieces whose chord midpoints
+        are smaller along the longer dimension of the range's bounds
+        come first, store those bounds, and recurse. */
+    void build(int lo, int hi) {
+        if (lo >= hi) {
+            return;
+        }
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = lo; i < hi; ++i) {
+            int p = order[i];
+            double e = errors[p];
+            minX = Math.min(minX, Math.min(x0s[p], x1s[p]) - e);
+            minY = Math.min(minY, Math.min(y0s[p], y1s[p]) - e);
+            maxX = Math.max(maxX, Math.max(x0s[p], x1s[p]) + e);
+            maxY = Math.max(maxY, Math.max(y0s[p], y1s[p]) + e);
+        }
+        int mid = (lo + hi) >>> 1;
+        double[] keys = new double[hi - lo];
+        boolean splitX = maxX - minX >= maxY - minY;
+        for (int i = lo; i < hi; ++i) {
+            int p = order[i];
+            keys[i - lo] = splitX ? (x0s[p] + x1s[p]) : (y0s[p] + y1s[p]);
+        }
+        select(keys, lo, 0, hi - lo - 1, mid - lo);
+        minXs[mid] = minX;
+        minYs[mid] = minY;
+        maxXs[mid] = maxX;
+        maxYs[mid] = maxY;
+        build(lo, mid);
+        build(mid + 1, hi);
+    }
+
+    /** Quickselect: partially sort keys[lo, hi] (and the
+        corresponding entries of order, which are offset by base) so
+        that keys[k] is in its sorted position. */
+    void select(double[] keys, int base, int lo, int hi, int k) {
+        while (hi > lo) {
+            double pivot = keys[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    ++i;
+                }
+                while (keys[j] > pivot) {
+                    --j;
+                }
+                if (i <= j) {
+                    double t = keys[i]; keys[i] = keys[j]; keys[j] = t;
+                    int it = order[base + i];
+                    order[base + i] = order[base + j];
+                    order[base + j] = it;
+                    ++i;
+                    --j;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /** Lower bound on the distance from (x, y) to the node at mid. */
+    double boxDistance(double x, double y, int mid) {
+        double dx = Math.max(0, Math.max(minXs[mid] - x, x - maxXs[mid]));
+        double dy = Math.max(0, Math.max(minYs[mid] - y, y - maxYs[mid]));
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /** Pieces that might contain the nearest point, with lower bounds
+        on their distances, and the smallest upper bound found so
+        far. */
+    static class Candidates {
+        int[] pieces = new int[16];
+        double[] lowers = new double[16];
+        int size = 0;
+        double bestUpper = Double.POSITIVE_INFINITY;
+
+        void add(int piece, double lower, double upper) {
+            bestUpper = Math.min(bestUpper, upper);
+            if (lower > bestUpper) {
+                return;
+            }
+            if (size == pieces.length) {
+                pieces = Arrays.copyOf(pieces, size * 2);
+                lowers = Arrays.copyOf(lowers, size * 2);
+            }
+            pieces[size] = piece;
+            lowers[size] = lower;
+            ++size;
+        }
+
+        /** Insertion sort by lower bound. There are usually only a
+            few candidates. */
+        void sort() {
+            for (int i = 1; i < size; ++i) {
+                int piece = pieces[i];
+                double lower = lowers[i];
+                int j = i;
+                for (; j > 0 && lowers[j - 1] > lower; --j) {
+                    pieces[j] = pieces[j - 1];
+                    lowers[j] = lowers[j - 1];
+                }
+                pieces[j] = piece;
+                lowers[j] = lower;
+            }
+        }
+    }
+
+    void search(double x, double y, int lo, int hi, Candidates c) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        if (boxDistance(x, y, mid) > c.bestUpper) {
+            return;
+        }
+        int p = order[mid];
+        double d = Line2D.ptSegDist(x0s[p], y0s[p], x1s[p], y1s[p], x, y);
+        c.add(p, d - errors[p], d + errors[p]);
+
+        // Search the nearer child first so that bestUpper shrinks
+        // sooner.
+        int leftMid = (lo + mid) >>> 1;
+        int rightMid = (mid + 1 + hi) >>> 1;
+        boolean leftFirst = lo >= mid
+            || (mid + 1 < hi
+                && boxDistance(x, y, leftMid) <= boxDistance(x, y, rightMid));
+        if (leftFirst) {
+            search(x, y, lo, mid, c);
+            search(x, y, mid + 1, hi, c);
+        } else {
+            search(x, y, mid + 1, hi, c);
+            search(x, y, lo, mid, c);
+        }
+    }
+
+    /** Return the distance from p to the nearest curve, along with
+        the index of that curve in the list passed to the
+        constructor, or null if there are no curves.
+
+        @see BoundedParam2D#distance(Point2D, double, int) for the
+        meaning of maxError and maxSteps, which apply separately to
+        each piece that has to be examined exactly. */
+    public OffsetParam2D.DistanceIndex distance(Point2D p,
+            double maxError, int maxSteps) {
+        if (pieces.length == 0) {
+            return null;
+        }
+        Candidates c = new Candidates();
+        search(p.getX(), p.getY(), 0, pieces.length, c);
+
+        // Examine the candidates in order of increasing lower bound,
+        // stopping once no remaining candidate can beat the best
+        // exact distance found so far.
+        c.sort();
+
+        CurveDistance best = null;
+        int bestCurve = -1;
+        for (int i = 0; i < c.size; ++i) {
+            double lower = c.lowers[i];
+            if (lower > c.bestUpper || (best != null && lower >= best.distance)) {
+                break;
+            }
+            int piece = c.pieces[i];
+            CurveDistance d = pieces[piece].distance(p, maxError, maxSteps);
+            if (d == null) {
+                continue;
+            }
+            int ci = curveIndexes[piece];
+            if (best == null || d.distance < best.distance
+                || (d.distance == best.distance && ci < bestCurve)) {
+                best = d;
+                bestCurve = ci;
+            }
+        }
+        return (best == null) ? null
+            : new OffsetParam2D.DistanceIndex(best, bestCurve);
+    }
+}
@@ -170,8 +170,9 @@ public class Polynomial {
     }
 
     /** Return an array of the zeros of "poly" in order from least to
-        greatest. Currently throws IllegalArgumentException on
-        polynomials of degree 4 or greater. */
+        greatest. Polynomials of degree 4 or greater are solved by
+        solve(poly, -bound, bound), where bound is the Cauchy bound on
+        the magnitude of the roots. */
     public static double[] solve(double[] poly) {
         int d = degree(poly);
         if (d <= 0) {
@@ -196,9 +197,13 @@ public class Polynomial {
             rootCnt = 0;
             break;
         default:
-            throw new IllegalArgumentException
-                ("Cannot solve polynomial " + Arrays.toString(poly)
-                 + " because its degree exceeds 3");
+            {
+                double bound = 0;
+                for (int i = 0; i < d; ++i) {
+                    bound = Math.max(bound, Math.abs(poly[i] / poly[d]));
+                }
+                return solve(poly, -1 - bound, 1 + bound);
+            }
         }
 
         if (rootCnt > 1) {
@@ -211,9 +216,125 @@ public class Polynomial {
         }
     }
 
+    /** Maximum number of iterations for finding a single bracketed
+        root in solve(poly, lo, hi). */
+    static final int MAX_ROOT_STEPS = 100;
+
+    /** Return the real zeros of poly in [lo, hi] in increasing order.
+        This works for polynomials of any degree, though it is meant
+        for degrees up to about 7, and it is slower than solve(poly)
+        for degrees of 3 or less.
+
+        The zeros of the derivative of poly divide [lo, hi] into
+        intervals over which poly is monotonic, so each of those
+        intervals contains at most one zero, which can be found by
+        Newton's method safeguarded by bisection. The derivative's
+        zeros are found the same way, recursively. A zero of even
+        multiplicity is only reported if poly evaluates to nearly zero
+        at the corresponding zero of the derivative. */
+    public static double[] solve(double[] poly, double lo, double hi) {
+        int d = degree(poly);
+        if (d <= 0 || !(lo <= hi)) {
+            return new double[0];
+        }
+        // derivs[k] is the k-th derivative of poly.
+        double[][] derivs = new double[d + 1][];
+        derivs[0] = Arrays.copyOf(poly, d + 1);
+        for (int k = 1; k <= d; ++k) {
+            derivs[k] = derivative(derivs[k-1]);
+        }
+        double[] res = new double[d];
+        int cnt = solve(derivs, 0, lo, hi, res);
+        return (cnt == d) ? res : Arrays.copyOf(res, cnt);
+    }
+
+    /** Store the zeros of derivs[k] in [lo, hi] in res in increasing
+        order, and return the number of zeros found. */
+    static int solve(double[][] derivs, int k, double lo, double hi,
+                     double[] res) {
+        double[] poly = derivs[k];
+        int d = poly.length - 1;
+        if (d == 1) {
+            double x = -poly[0] / poly[1];
+            if (x >= lo && x <= hi) {
+                res[0] = x;
+                return 1;
+            }
+            return 0;
+        }
+
+        double[] crits = new double[d - 1];
+        int critCnt = solve(derivs, k + 1, lo, hi, crits);
+        int cnt = 0;
+        double a = lo;
+        double fa = evaluate(a, poly);
+        if (fa == 0) {
+            res[cnt++] = a;
+        }
+        for (int i = 0; i <= critCnt; ++i) {
+            double b = (i < critCnt) ? crits[i] : hi;
+            double fb = evaluate(b, poly);
+            if (b > a) {
+                if (fb == 0) {
+                    res[cnt++] = b;
+                } else if (fa != 0 && (fa < 0) != (fb < 0)) {
+                    res[cnt++] = bracketedRoot(poly, derivs[k + 1], a, b, fa);
+                } else if (i < critCnt && fa != 0
+                           && Math.abs(fb) <= 1e-14 * magnitude(poly, b)) {
+                    // Double root (or close enough).
+                    res[cnt++] = b;
+                }
+            }
+            a = b;
+            fa = fb;
+        }
+        return cnt;
+    }
+
+    /** @return the sum of the absolute values of the terms of poly
+        at x, which bounds the roundoff error of evaluate(x, poly). */
+    static double magnitude(double[] poly, double x) {
+        double ax = Math.abs(x);
+        double result = 0;
+        for (int i = poly.length - 1; i >= 0; --i) {
+            result = result * ax + Math.abs(poly[i]);
+        }
+        return result;
+    }
+
+    /** Return the zero of poly in [a, b], given that poly is monotonic
+        over [a, b], poly(a) = fa, and poly(b) has the opposite sign
+        of fa. deriv is the derivative of poly. */
+    static double bracketedRoot(double[] poly, double[] deriv,
+                                double a, double b, double fa) {
+        boolean aNegative = fa < 0;
+        double x = (a + b) / 2;
+        for (int step = 0; step < MAX_ROOT_STEPS; ++step) {
+            double fx = evaluate(x, poly);
+            if (fx == 0) {
+                return x;
+            }
+            if ((fx < 0) == aNegative) {
+                a = x;
+            } else {
+                b = x;
+            }
+            double next = x - fx / evaluate(x, deriv);
+            if (!(next > a && next < b)) {
+                next = (a + b) / 2;
+                if (next <= a || next >= b) {
+                    break; // Cannot narrow [a, b] any further.
+                }
+            } else if (Math.abs(next - x) <= 1e-15 * Math.abs(x)) {
+                return next;
+            }
+            x = next;
+        }
+        return x;
+    }
+
     /** @return a 2-element array holding the minimum and maximum
-        values of the polynomial "poly" for t in [t0, t1]. Currently
-        throws IllegalArgumentException on polynomials of degree 5 or more. */
+        values of the polynomial "poly" for t in [t0, t1]. */
     public static double[] getBounds(double[] poly, double t0, double t1) {
         double v0 = evaluate(t0, poly);
         double v1 = evaluate(t1, poly);
@@ -32,7 +32,7 @@ public class SegmentParam2D extends Param2DAdapter {
         CurveDistance res = CurveDistance.pointSegmentDistance
             (p, getLocation(t0), getLocation(t1));
         if (t1 > t0) {
-            res.t = t0 + res.t / (t1 - t0);
+            res.t = t0 + res.t * (t1 - t0);
         } else {
             res.t = t0;
         }
@@ -14,18 +14,16 @@ import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.lang.ref.SoftReference;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Arrays;
-
-import javax.imageio.ImageIO;
+import java.util.Objects;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
 import gov.nist.pededitor.DecorationHandle.Type;
 
@@ -34,21 +32,84 @@ public class SourceImage implements Decoration {
     protected PolygonTransform transform = null;
     protected double alpha = 0.0;
     protected String filename;
-    protected byte[] bytes;
     protected Rectangle2D pageBounds;
+    /** The image file contents, or null if there are none or they
+        are deferred. */
+    protected transient ImageStore.Entry stored = null;
+    /** If not null, then bytes have not been read from the PED file
+        yet, and this says where to find them. */
+    protected transient DeferredImageBytes deferredBytes = null;
+
+    /** @return the image file contents, reading them from the PED
+        file first if they were deferred. */
+    synchronized byte[] bytes() {
+        ImageStore.Entry e = storedImage();
+        return (e == null) ? null : e.bytes;
+    }
+
+    /** @return the ImageStore entry for the image file contents,
+        reading them from the PED file first if they were deferred
+        and are not in the store already, or null if there are none
+        or they could not be read. */
+    synchronized ImageStore.Entry storedImage() {
+        try {
+            return readStoredImage();
+        } catch (IOException x) {
+            SourceImage.readFailures++;
+            x.printStackTrace();
+            return null;
+        }
+    }
 
-    /**
-     * For use by EditorState to check whether bytes[] has changed
-     * without actually storing the whole thing. Yeah, it's not 100%
-     * reliable, but 99.99% is good enough. */
-    transient int bytesHashCode = 0;
+    /** Like storedImage(), but throw an exception if deferred image
+        bytes cannot be read, or if they do not match the key that
+        getImageKey() reported for them. */
+    synchronized ImageStore.Entry readStoredImage() throws IOException {
+        if (deferredBytes != null) {
+            DeferredImageBytes d = deferredBytes;
+            String expected = (d.entry == null) ? null
+                : PEDContainer.imageKey(d.entry);
+            byte[] bytes = d.read();
+            String key = ImageStore.key(bytes);
+            if (expected != null && !expected.equals(key)) {
+                throw new IOException("Image entry '" + d.entry
+                        + "' does not match its SHA-256 hash");
+            }
+            stored = ImageStore.intern(key, bytes);
+            deferredBytes = null;
+        }
+        return stored;
+    }
+
+    /** @return the ImageStore key of the image file contents, or
+        null if there are none. A container image's key is taken from
+        its entry name without reading it; readStoredImage() fails
+        instead of returning bytes with a different key. */
+    @JsonIgnore synchronized String getImageKey() {
+        if (deferredBytes != null && deferredBytes.entry != null) {
+            String key = PEDContainer.imageKey(deferredBytes.entry);
+            if (key != null) {
+                return key;
+            }
+        }
+        ImageStore.Entry e = storedImage();
+        return (e == null) ? null : e.key;
+    }
 
-    @JsonProperty void setBytesHashCode(int code) {
-        bytesHashCode = code;
+    /** Used by EditorState, which stores image keys instead of
+        bytes. The entry must still be in the ImageStore. */
+    @JsonIgnore void setImageKey(String key) {
+        ImageStore.Entry e = (key == null) ? null : ImageStore.get(key);
+        if (key != null && e == null) {
+            throw new IllegalArgumentException("No stored image has key " + key);
+        }
+        setStoredImage(e);
     }
 
-    int bytesHashCode() {
-        return (bytes == null) ? -491983163 : Arrays.hashCode(bytes);
+    /** @return true if the image bytes have not been read from the
+        PED file yet. */
+    boolean isDeferred() {
+        return deferredBytes != null;
     }
 
 
@@ -71,16 +132,7 @@ public class SourceImage implements Decoration {
 
     @Override public boolean equals(Object other) {
         return equalsExceptBytes(other)
-                && bytesHashCode() == ((SourceImage) other).bytesHashCode();
-    }
-
-    /**
-     * Compare this to other, but compare bytes hash codes instead of
-     * the actual bytes arrays.
-     */
-    boolean equalsByBytesHashCode(Object other) {
-        return equalsExceptBytes(other)
-                && bytesHashCode == ((SourceImage) other).bytesHashCode;
+            && Objects.equals(getImageKey(), ((SourceImage) other).getImageKey());
     }
 
     boolean equalsExceptBytes(Object other0) {
@@ -103,7 +155,7 @@ public class SourceImage implements Decoration {
             + (filename == null ? 2983 : filename.hashCode())
             + (transform == null ? 4790832 : transform.hashCode())
             + (pageBounds == null ? 2982575 : pageBounds.hashCode())
-            + (bytes == null ? 3729835 : Arrays.hashCode(bytes));
+            + Objects.hashCode(getImageKey());
     }
 
     @Override
@@ -111,7 +163,10 @@ public class SourceImage implements Decoration {
         SourceImage res = new SourceImage();
         res.alpha = alpha;
         res.filename = filename;
-        res.bytes = bytes;
+        synchronized (this) {
+            res.stored = stored;
+            res.deferredBytes = deferredBytes;
+        }
         res.triedToLoad = false;
         res.transform = transform.clone();
         res.transformedImages = transformedImages;
@@ -125,25 +180,37 @@ public class SourceImage implements Decoration {
      */
     protected transient ArrayList<SoftReference<CroppedTransformedImage>> transformedImages = new ArrayList<>();
 
+    /**
+     * The principal-to-scaled-page transform that scaledTransform was last
+     * computed for, or null if there is none.
+     */
+    protected transient AffineTransform scaledTransformKey = null;
+    /** transform followed by scaledTransformKey. */
+    protected transient PolygonTransform scaledTransform = null;
+    /** The inverse of scaledTransform. */
+    protected transient Transform2D scaledInverse = null;
+
     @JsonIgnore
     public BufferedImage getImage() {
         if (triedToLoad || image != null)
             return image;
         triedToLoad = true;
         try {
-            if (bytes == null) {
+            ImageStore.Entry e = storedImage();
+            if (e == null) {
                 if (filename == null) {
                     return null;
                 }
-                bytes = Files.readAllBytes(Paths.get(filename));
+                e = ImageStore.intern(Files.readAllBytes(Paths.get(filename)));
+                stored = e;
             }
 
-            image = ImageIO.read(new ByteArrayInputStream(bytes));
+            image = e.getImage();
         } catch (IOException x) {
             SourceImage.readFailures++;
             x.printStackTrace();
             // No better option than to live with it.
-            bytes = null;
+            stored = null;
         }
         return image;
     }
@@ -174,7 +241,8 @@ public class SourceImage implements Decoration {
 
     public void setFilename(String filename) {
         this.filename = filename;
-        bytes = null;
+        stored = null;
+        deferredBytes = null;
         image = null;
         transformedImages = new ArrayList<>();
         triedToLoad = false;
@@ -183,6 +251,7 @@ public class SourceImage implements Decoration {
     public void setTransform(PolygonTransform xform) {
         this.transform = xform.clone();
         inverseTransform = null;
+        scaledTransformKey = null;
     }
 
     public PolygonTransform getTransform() {
@@ -250,16 +319,50 @@ public class SourceImage implements Decoration {
         if (alpha == 0)
             return;
         Rectangle bounds = (g.getClip() == null) ? null : g.getClip().getBounds();
-        PolygonTransform xform0 = transform.clone();
-        xform0.preConcatenate(new Affine(xform));
-        xform0.preConcatenate(new Affine(AffineTransform.getScaleInstance(scale, scale)));
-        CroppedTransformedImage im = getCroppedTransformedImage(getImage(), transformedImages, xform0, bounds,
-                toScaledRectangle(pageBounds, scale));
+        AffineTransform toScaledPage = AffineTransform.getScaleInstance(scale, scale);
+        toScaledPage.concatenate(xform);
+        PolygonTransform xform0;
+        Transform2D inverse;
+        synchronized (this) {
+            xform0 = scaledTransform(toScaledPage);
+            inverse = scaledInverse;
+        }
+        CroppedTransformedImage im = getCroppedTransformedImage(getImage(), transformedImages, xform0, inverse,
+                bounds, toScaledRectangle(pageBounds, scale));
         if (im == null)
             return;
         draw(g, im.croppedImage, (float) alpha, im.cropBounds.x, im.cropBounds.y);
     }
 
+    /**
+     * @return a copy of xform followed by toPage. All of the affine stages
+     * are folded into a single preConcatenate() call, so the result is a
+     * single PolygonTransform instead of a chain.
+     */
+    static PolygonTransform fuse(PolygonTransform xform, AffineTransform toPage) {
+        PolygonTransform res = xform.clone();
+        res.preConcatenate(new Affine(toPage));
+        return res;
+    }
+
+    /**
+     * @return transform followed by toScaledPage. The result and its inverse
+     * are cached so that repainting at the same scale and position does not
+     * recompute them. The result should not be modified.
+     */
+    synchronized PolygonTransform scaledTransform(AffineTransform toScaledPage) {
+        if (scaledTransform == null || !toScaledPage.equals(scaledTransformKey)) {
+            scaledTransform = fuse(transform, toScaledPage);
+            try {
+                scaledInverse = scaledTransform.createInverse();
+            } catch (NoninvertibleTransformException e) {
+                scaledInverse = null;
+            }
+            scaledTransformKey = (AffineTransform) toScaledPage.clone();
+        }
+        return scaledTransform;
+    }
+
     static Rectangle toScaledRectangle(Rectangle2D rect, double scale) {
         rect = Geom.createScaled(rect, scale);
         int x = (int) Math.floor(rect.getX());
@@ -285,7 +388,7 @@ public class SourceImage implements Decoration {
     static CroppedTransformedImage getCroppedTransformedImage(
             BufferedImage input,
             ArrayList<SoftReference<CroppedTransformedImage>> transformedImages2,
-            PolygonTransform xform,
+            PolygonTransform xform, Transform2D inverse,
             Rectangle viewBounds, Rectangle imageBounds) {
         if (viewBounds == null) {
             return null;
@@ -444,7 +547,7 @@ public class SourceImage implements Decoration {
             ? ImageTransform.DithererType.FAST
             : ImageTransform.DithererType.GOOD;
 
-        im.croppedImage = transform(input, cropBounds, xform, dither, 1.0);
+        im.croppedImage = transform(input, cropBounds, xform, inverse, dither, 1.0);
         transformedImages2.add(new SoftReference<>(im));
         return im;
     }
@@ -455,21 +558,49 @@ public class SourceImage implements Decoration {
      */
     @JsonProperty("bytes")
     protected byte[] getBytesUnsafe() throws IOException {
-        return bytes;
+        return bytes();
     }
 
     /**
      * Set the binary content of the image file. Changing the array contents is
      * not safe.
      */
-    @JsonProperty("bytes")
     protected void setBytesUnsafe(byte[] bytes) {
-        this.bytes = bytes;
+        setStoredImage((bytes == null) ? null : ImageStore.intern(bytes));
+    }
+
+    @JsonIgnore synchronized void setStoredImage(ImageStore.Entry e) {
+        stored = e;
+        deferredBytes = null;
         image = null;
         transformedImages = new ArrayList<>();
         triedToLoad = false;
     }
 
+    /** @return the name of the PEDContainer entry for this image's
+        bytes, or null if there are none. */
+    @JsonIgnore String getImageEntry() {
+        String key = getImageKey();
+        return (key == null) ? null : PEDContainer.entryName(key);
+    }
+
+    /** Used during PEDContainer deserialization. */
+    @JsonIgnore void setImageEntry(DeferredImageBytes b) {
+        setJSONBytes(b);
+    }
+
+    /** Used during JSON deserialization. */
+    @JsonProperty("bytes")
+    @JsonDeserialize(using = DeferredImageBytes.Deserializer.class)
+    protected void setJSONBytes(DeferredImageBytes b) {
+        setBytesUnsafe((b == null) ? null : b.bytes);
+        if (b != null && b.bytes == null) {
+            synchronized (this) {
+                deferredBytes = b;
+            }
+        }
+    }
+
     /**
      * Apply transform to the image, then apply principalToScaledPage, then
      * translate the upper-left corner of cropRect to position (0,0). Return the
@@ -480,9 +611,7 @@ public class SourceImage implements Decoration {
      */
     synchronized BufferedImage transform(Rectangle cropRect, AffineTransform principalToScaledPage,
             ImageTransform.DithererType dither, double alpha) throws IOException {
-        PolygonTransform xform = transform.clone();
-        xform.preConcatenate(new Affine(principalToScaledPage));
-        return transform(getImage(), cropRect, xform, dither, alpha);
+        return transform(getImage(), cropRect, fuse(transform, principalToScaledPage), dither, alpha);
     }
 
     /**
@@ -495,17 +624,24 @@ public class SourceImage implements Decoration {
      */
     public static BufferedImage transform(BufferedImage input, Rectangle cropRect, PolygonTransform xform,
             ImageTransform.DithererType dither, double alpha) {
+        return transform(input, cropRect, xform, null, dither, alpha);
+    }
+
+    /**
+     * Like transform(input, cropRect, xform, dither, alpha), but if inverse is
+     * not null, it is used as the inverse of xform instead of computing it
+     * again.
+     */
+    static BufferedImage transform(BufferedImage input, Rectangle cropRect, PolygonTransform xform,
+            Transform2D inverse, ImageTransform.DithererType dither, double alpha) {
         if (input == null || alpha == 0)
             return null;
 
-        PolygonTransform toCrop = xform.clone();
-
-        // Shift the transform so that location (cropRect.x,
-        // cropRect.y) is mapped to location (0,0).
-        toCrop.preConcatenate(new Affine(AffineTransform.getTranslateInstance(-cropRect.x, -cropRect.y)));
-
+        // The crop offset is applied to the output pixel coordinates
+        // directly instead of being concatenated to xform, so inverse
+        // can be shared by every crop of the same transform.
         System.out.println("Resizing original image (" + dither + ")...");
-        BufferedImage img = ImageTransform.run(toCrop, input, null, cropRect.getSize(), dither,
+        BufferedImage img = ImageTransform.run(xform, inverse, input, null, cropRect, dither,
                 BufferedImage.TYPE_INT_ARGB);
         if (alpha == 1) {
             return img;
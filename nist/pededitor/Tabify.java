@@ -3,27 +3,63 @@
 
 package gov.nist.pededitor;
 
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.DefaultIndenter;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+
+/** PED file pretty printing. The output is the same as that of
+    Jackson's default pretty printer, except that every 8 consecutive
+    spaces that start a line are converted into a tab. Using the
+    pretty printer directly instead of converting the output
+    afterwards allows PED files to be written as a stream. */
 public class Tabify {
-    /* Convert every set of 8 consecutive spaces that start a line into tabs. */
-    static String tabify(String s) {
-        StringBuilder res = new StringBuilder();
-        int spaceCnt = 0;
-        boolean lineStart = true;
-        for (int i = 0, len = s.length(); i < len; ++i) {
-        	char ch = s.charAt(i);
-            if (lineStart && ch == ' ') {
-                if (++spaceCnt == 8) {
-                    res.append('\t');
-                    spaceCnt = 0;
+    /** Number of spaces per indentation level. */
+    static final int INDENT = 2;
+
+    /** Object indenter that writes tabs in place of 8 spaces. */
+    static class TabIndenter implements DefaultPrettyPrinter.Indenter {
+        /** indentations[level] is the line break and indentation for
+            that level. Entries are created on demand; since they are
+            immutable and deterministic, races are harmless. */
+        private static volatile String[] indentations = new String[0];
+
+        static String indentation(int level) {
+            String[] is = indentations;
+            if (level < is.length) {
+                return is[level];
+            }
+            String[] res = new String[Math.max(level + 1, 2 * is.length)];
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < res.length; ++i) {
+                sb.setLength(0);
+                sb.append(DefaultIndenter.SYS_LF);
+                int spaceCnt = i * INDENT;
+                for (; spaceCnt >= 8; spaceCnt -= 8) {
+                    sb.append('\t');
                 }
-            } else {
                 for (; spaceCnt > 0; --spaceCnt) {
-                    res.append(' ');
+                    sb.append(' ');
                 }
-                res.append(ch);
-                lineStart = (ch == '\n');
+                res[i] = sb.toString();
             }
+            indentations = res;
+            return res[level];
+        }
+
+        @Override public void writeIndentation(JsonGenerator g, int level)
+            throws IOException {
+            g.writeRaw(indentation(level));
+        }
+
+        @Override public boolean isInline() {
+            return false;
         }
-        return res.toString();
     }
+
+    /** Pretty printer for PED files. ObjectWriter creates a new
+        instance for each use, so this can be shared. */
+    static final DefaultPrettyPrinter PRETTY_PRINTER
+        = new DefaultPrettyPrinter().withObjectIndenter(new TabIndenter());
 }